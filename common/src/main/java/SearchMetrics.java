@@ -0,0 +1,306 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+import org.jacop.core.Var;
+import org.jacop.search.ConsistencyListener;
+import org.jacop.search.DepthFirstSearch;
+import org.jacop.search.ExitListener;
+import org.jacop.search.InitializeListener;
+import org.jacop.search.Search;
+import org.jacop.search.SelectChoicePoint;
+import org.jacop.search.SimpleSolutionListener;
+
+/**
+ * Statistics of one search: nodes, failed nodes, maximum depth, consistency
+ * calls per second, the time of the first solution and the time and cost of
+ * every improving solution.
+ *
+ * The metrics are either attached to a JaCoP DepthFirstSearch through its
+ * listeners or updated directly by a search with start, node, solution and
+ * stop. A progress line is printed every logInterval milliseconds, and the
+ * statistics can be written as JSON or CSV when the search is done.
+ */
+public class SearchMetrics {
+
+	/**
+	 * Number of nodes between two checks of the clock for the progress
+	 * line; must be a power of two.
+	 */
+	static final int LOG_CHECK_INTERVAL = 1024;
+
+	long nodes = 0;
+
+	long fails = 0;
+
+	int maxDepth = 0;
+
+	/**
+	 * Start and end of the search in nanoseconds; end is 0 while running.
+	 */
+	long startTime = 0;
+
+	long endTime = 0;
+
+	/**
+	 * Store of the search, used for the number of consistency calls.
+	 */
+	Store store;
+
+	long startConsistencyCalls;
+
+	/**
+	 * Store level of the root node of a DepthFirstSearch, one above
+	 * the level at initialization.
+	 */
+	int rootLevel;
+
+	/**
+	 * Every solution as time in nanoseconds since start, number of nodes
+	 * and cost; the cost is Long.MIN_VALUE without a cost variable.
+	 */
+	final List<long[]> solutions = new ArrayList<long[]>();
+
+	/**
+	 * Milliseconds between two progress lines; 0 disables them.
+	 */
+	long logInterval = 0;
+
+	long nextLog;
+
+	PrintStream log = System.err;
+
+	/**
+	 * Starts measuring. Ignored if already started, so that a search which
+	 * calls label() several times is measured as one run.
+	 */
+	public void start(Store s) {
+		if (startTime != 0)
+			return;
+		store = s;
+		startConsistencyCalls = s.numberConsistencyCalls;
+		startTime = System.nanoTime();
+		nextLog = startTime + logInterval * 1000000;
+	}
+
+	/**
+	 * Counts a node after its consistency.
+	 *
+	 * @param depth number of decisions above the node.
+	 * @param consistent false if the node failed.
+	 */
+	public void node(int depth, boolean consistent) {
+		nodes++;
+		if (!consistent)
+			fails++;
+		if (depth > maxDepth)
+			maxDepth = depth;
+
+		if (logInterval > 0 && (nodes & (LOG_CHECK_INTERVAL - 1)) == 0) {
+			long now = System.nanoTime();
+			if (now >= nextLog) {
+				log.println(progress(now));
+				nextLog = now + logInterval * 1000000;
+			}
+		}
+	}
+
+	/**
+	 * Records a solution.
+	 *
+	 * @param cost cost variable of an optimization, or null.
+	 */
+	public void solution(IntVar cost) {
+		long value = cost != null ? cost.min() : Long.MIN_VALUE;
+		solutions.add(new long[] { System.nanoTime() - startTime, nodes, value });
+	}
+
+	/**
+	 * Stops measuring; can be called again when a search is resumed.
+	 */
+	public void stop() {
+		endTime = System.nanoTime();
+	}
+
+	/**
+	 * Attaches the metrics to a search through its initialize, consistency,
+	 * solution and exit listeners. Must be called after the solution
+	 * listener of the search has been set. The nodes of child searches
+	 * added before are counted too, at their depth below the root.
+	 */
+	public <T extends Var> void attach(DepthFirstSearch<T> search) {
+
+		search.setInitializeListener(new InitializeListener() {
+
+			public void executedAtInitialize(Store s) {
+				start(s);
+				rootLevel = s.level + 1;
+			}
+
+			public void setChildrenListeners(InitializeListener[] children) {
+			}
+
+			public void setChildrenListeners(InitializeListener child) {
+			}
+		});
+
+		countNodes(search, new ConsistencyListener() {
+
+			public boolean executeAfterConsistency(boolean consistent) {
+				node(store.level - rootLevel, consistent);
+				return consistent;
+			}
+
+			public void setChildrenListeners(ConsistencyListener[] children) {
+			}
+
+			public void setChildrenListeners(ConsistencyListener child) {
+			}
+		});
+
+		search.getSolutionListener().setChildrenListeners(new SimpleSolutionListener<T>() {
+
+			@Override
+			public boolean executeAfterSolution(Search<T> s, SelectChoicePoint<T> select) {
+				Var cost = s.getCostVariable();
+				solution(cost instanceof IntVar ? (IntVar) cost : null);
+				return true;
+			}
+		});
+
+		search.setExitListener(new ExitListener() {
+
+			public void executedAtExit(Store s, int solutionsNo) {
+				stop();
+			}
+
+			public void setChildrenListeners(ExitListener[] children) {
+			}
+
+			public void setChildrenListeners(ExitListener child) {
+			}
+		});
+	}
+
+	/**
+	 * Sets the node counter of a search and of all its child searches.
+	 */
+	static void countNodes(DepthFirstSearch<?> search, ConsistencyListener counter) {
+		search.setConsistencyListener(counter);
+		if (search.childSearches == null)
+			return;
+		for (Search<? extends Var> child : search.childSearches)
+			if (child instanceof DepthFirstSearch)
+				countNodes((DepthFirstSearch<?>) child, counter);
+	}
+
+	/**
+	 * Prints a progress line every interval milliseconds while searching.
+	 */
+	public void setLogInterval(long interval) {
+		logInterval = interval;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getFails() {
+		return fails;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return milliseconds from start to stop, or to now while running.
+	 */
+	public double getTime() {
+		return millis((endTime != 0 ? endTime : System.nanoTime()) - startTime);
+	}
+
+	/**
+	 * @return milliseconds to the first solution, or -1 if there is none.
+	 */
+	public double getTimeToFirstSolution() {
+		return solutions.isEmpty() ? -1 : millis(solutions.get(0)[0]);
+	}
+
+	/**
+	 * @return consistency calls per second from start to stop.
+	 */
+	public double getPropagationRate() {
+		double time = getTime();
+		return time > 0 ? (store.numberConsistencyCalls - startConsistencyCalls) * 1000 / time : 0;
+	}
+
+	String progress(long now) {
+		StringBuilder line = new StringBuilder();
+		line.append(String.format(Locale.ROOT, "%.1f s: nodes %d, fails %d, max depth %d, %.0f propagations/s",
+				millis(now - startTime) / 1000, nodes, fails, maxDepth,
+				(store.numberConsistencyCalls - startConsistencyCalls) * 1e9 / (now - startTime)));
+		if (!solutions.isEmpty()) {
+			long[] last = solutions.get(solutions.size() - 1);
+			line.append(", solutions " + solutions.size());
+			if (last[2] != Long.MIN_VALUE)
+				line.append(String.format(Locale.ROOT, ", best %d at %.1f s", last[2], millis(last[0]) / 1000));
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Writes the statistics to a file, as CSV if the name ends with .csv
+	 * and as JSON otherwise.
+	 */
+	public void write(String file) throws IOException {
+		try (PrintWriter out = new PrintWriter(file)) {
+			out.print(file.endsWith(".csv") ? toCsv() : toJson());
+		}
+	}
+
+	/**
+	 * Returns one line per solution followed by a line for the end of the
+	 * search; the cost column is empty without a cost variable.
+	 */
+	public String toCsv() {
+		StringBuilder csv = new StringBuilder("event,time_ms,nodes,fails,max_depth,propagations_per_s,cost\n");
+		for (long[] s : solutions)
+			csv.append(String.format(Locale.ROOT, "solution,%.3f,%d,,,,%s\n", millis(s[0]), s[1], cost(s[2], "")));
+		csv.append(String.format(Locale.ROOT, "end,%.3f,%d,%d,%d,%.0f,\n", getTime(), nodes, fails, maxDepth,
+				getPropagationRate()));
+		return csv.toString();
+	}
+
+	public String toJson() {
+		StringBuilder json = new StringBuilder("{\n");
+		json.append("  \"nodes\": " + nodes + ",\n");
+		json.append("  \"fails\": " + fails + ",\n");
+		json.append("  \"maxDepth\": " + maxDepth + ",\n");
+		json.append(String.format(Locale.ROOT, "  \"timeMs\": %.3f,\n", getTime()));
+		json.append(String.format(Locale.ROOT, "  \"propagationsPerSecond\": %.0f,\n", getPropagationRate()));
+		json.append(String.format(Locale.ROOT, "  \"timeToFirstSolutionMs\": %.3f,\n", getTimeToFirstSolution()));
+		json.append("  \"solutions\": [");
+		for (int i = 0; i < solutions.size(); i++) {
+			long[] s = solutions.get(i);
+			json.append(i == 0 ? "\n" : ",\n");
+			json.append(String.format(Locale.ROOT, "    {\"timeMs\": %.3f, \"nodes\": %d, \"cost\": %s}", millis(s[0]), s[1],
+					cost(s[2], "null")));
+		}
+		json.append(solutions.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+		return json.toString();
+	}
+
+	static String cost(long cost, String none) {
+		return cost == Long.MIN_VALUE ? none : Long.toString(cost);
+	}
+
+	static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+}
@@ -0,0 +1,145 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.jacop.core.IntVar;
+import org.jacop.search.Search;
+import org.jacop.search.SelectChoicePoint;
+import org.jacop.search.SimpleSolutionListener;
+
+/**
+ * Writes solutions on a background thread so that the search does not
+ * wait for the output. Every solution is handed over as an int[] of
+ * values through a bounded queue and written as one line of values
+ * separated by spaces. The search only blocks when the queue is full.
+ */
+public class SolutionSink implements AutoCloseable {
+
+	/**
+	 * Marks the end of the solutions in the queue.
+	 */
+	static final int[] END = new int[0];
+
+	final BlockingQueue<int[]> queue;
+
+	final Writer out;
+
+	final Thread writer;
+
+	/**
+	 * First error of the writer thread, thrown by close().
+	 */
+	volatile IOException error = null;
+
+	volatile int written = 0;
+
+	/**
+	 * @param out receives the solutions; closed by close().
+	 * @param capacity number of solutions that can wait to be written.
+	 */
+	public SolutionSink(Writer out, int capacity) {
+		this.out = new BufferedWriter(out);
+		queue = new ArrayBlockingQueue<int[]>(capacity);
+		writer = new Thread(this::write, "solution-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Queues a solution; the array must not be changed afterwards. Can be
+	 * called from several threads.
+	 */
+	public void put(int[] solution) {
+		try {
+			queue.put(solution);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Queues the values of a solution.
+	 */
+	public void put(IntVar[] vars) {
+		int[] solution = new int[vars.length];
+		for (int i = 0; i < vars.length; i++)
+			solution[i] = vars[i].value();
+		put(solution);
+	}
+
+	/**
+	 * Returns a solution listener for a DepthFirstSearch which queues the
+	 * values of vars for every solution instead of printing them.
+	 */
+	public SimpleSolutionListener<IntVar> listener(IntVar[] vars) {
+		return new SimpleSolutionListener<IntVar>() {
+
+			@Override
+			public boolean executeAfterSolution(Search<IntVar> search, SelectChoicePoint<IntVar> select) {
+				boolean result = super.executeAfterSolution(search, select);
+				put(vars);
+				return result;
+			}
+		};
+	}
+
+	void write() {
+		StringBuilder line = new StringBuilder();
+		while (true) {
+			int[] solution;
+			try {
+				solution = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (solution == END)
+				return;
+			if (error != null)
+				// keep draining so that the search is never blocked
+				continue;
+
+			line.setLength(0);
+			for (int i = 0; i < solution.length; i++) {
+				if (i > 0)
+					line.append(' ');
+				line.append(solution[i]);
+			}
+			line.append('\n');
+			try {
+				out.write(line.toString());
+				written++;
+				if (queue.isEmpty())
+					out.flush();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+	}
+
+	/**
+	 * @return number of solutions written so far; all of them after close().
+	 */
+	public int getWritten() {
+		return written;
+	}
+
+	/**
+	 * Waits until all queued solutions are written and closes the output.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (writer.isAlive()) {
+			put(END);
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			out.close();
+		}
+		if (error != null)
+			throw error;
+	}
+}
@@ -0,0 +1,90 @@
+package bench;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jacop.core.Store;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the AdjacencyCount model of App with the Distance and Reified
+ * decomposition on random instances with 4n/3 preferences.
+ *
+ * Proving optimality is out of reach above n = 15, so the benchmarks
+ * measure construction, propagation at the root and time to the first
+ * solution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AdjacencyCountBenchmark {
+
+    @Param({ "15", "50", "200" })
+    int n;
+
+    @Param({ "global", "decomposed" })
+    String model;
+
+    Object app;
+
+    Field store;
+    Method buildModel;
+    Method search;
+
+    @Setup(Level.Trial)
+    public void resolve() throws ReflectiveOperationException {
+        Random random = new Random(n);
+        int[][] prefs = new int[n * 4 / 3][];
+        for (int i = 0; i < prefs.length; i++) {
+            int a = 1 + random.nextInt(n);
+            int b = 1 + random.nextInt(n - 1);
+            prefs[i] = new int[] { a, b >= a ? b + 1 : b };
+        }
+
+        Class<?> c = Class.forName("App");
+        Constructor<?> constructor = c.getConstructor(int.class, int[][].class, int.class);
+        app = constructor.newInstance(n, prefs, 1);
+        c.getField("decomposed").setBoolean(app, model.equals("decomposed"));
+        store = c.getField("store");
+        buildModel = c.getMethod("buildModel");
+        search = c.getMethod("search", boolean.class, boolean.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void build() throws ReflectiveOperationException {
+        buildModel.invoke(app);
+    }
+
+    @Benchmark
+    public Object construction() throws ReflectiveOperationException {
+        buildModel.invoke(app);
+        return app;
+    }
+
+    @Benchmark
+    public boolean rootPropagation() throws ReflectiveOperationException {
+        return ((Store) store.get(app)).consistency();
+    }
+
+    @Benchmark
+    public Object firstSolution() throws ReflectiveOperationException {
+        return search.invoke(app, false, false);
+    }
+}
@@ -0,0 +1,75 @@
+package bench;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures model construction, time to the first solution and time to
+ * prove the best solution for the three inputs of App.
+ *
+ * JMH does not accept benchmarks in the default package, so App is
+ * reached through reflection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AppBenchmark {
+
+    @Param({ "1", "2", "3" })
+    int input;
+
+    /**
+     * Instance, built before every invocation of a search benchmark
+     */
+    Object app;
+
+    Method buildModel;
+    Method search;
+
+    @Setup(Level.Trial)
+    public void resolve() throws ReflectiveOperationException {
+        Class<?> c = Class.forName("App");
+        int n = c.getField("N_" + input).getInt(null);
+        int[][] prefs = (int[][]) c.getField("PREFS_" + input).get(null);
+        app = c.getConstructor(int.class, int[][].class, int.class).newInstance(n, prefs, 1);
+        buildModel = c.getMethod("buildModel");
+        search = c.getMethod("search", boolean.class, boolean.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void build() throws ReflectiveOperationException {
+        buildModel.invoke(app);
+    }
+
+    @Benchmark
+    public Object construction() throws ReflectiveOperationException {
+        buildModel.invoke(app);
+        return app;
+    }
+
+    @Benchmark
+    public Object firstSolution() throws ReflectiveOperationException {
+        return search.invoke(app, false, false);
+    }
+
+    @Benchmark
+    public Object optimal() throws ReflectiveOperationException {
+        return search.invoke(app, true, false);
+    }
+}
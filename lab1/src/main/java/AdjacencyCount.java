@@ -0,0 +1,200 @@
+import java.util.ArrayList;
+
+import org.jacop.constraints.Constraint;
+import org.jacop.core.IntDomain;
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+import org.jacop.core.Var;
+
+/**
+ * Counts the preferences that are not satisfied, that is the pairs of
+ * people placed more than maxDiff apart:
+ *
+ *   violated = #{ (a, b) in prefs : |positions[a] - positions[b]| > maxDiff }
+ *
+ * One propagator replaces a Distance, a Reified XgtC and two extra
+ * variables per preference. Every preference is classified from the bounds
+ * of its two positions as surely satisfied, surely violated or open, and
+ * violated is bounded by the counts. When violated reaches its bound, all
+ * open preferences are forced to be satisfied, or all of them to be
+ * violated.
+ */
+public class AdjacencyCount extends Constraint {
+
+    static int idNumber = 1;
+
+    final IntVar[] positions;
+
+    /**
+     * Index in positions of both people of every preference
+     */
+    final int[] first;
+    final int[] second;
+
+    final int maxDiff;
+
+    final IntVar violated;
+
+    /**
+     * @param positions position of every person
+     * @param prefs preferences as pairs of people, numbered from 1
+     * @param maxDiff largest distance of a satisfied preference
+     * @param violated number of preferences that are not satisfied
+     */
+    public AdjacencyCount(IntVar[] positions, int[][] prefs, int maxDiff, IntVar violated) {
+        numberId = idNumber++;
+        numberArgs = positions.length + 1;
+
+        this.positions = positions;
+        this.maxDiff = maxDiff;
+        this.violated = violated;
+
+        first = new int[prefs.length];
+        second = new int[prefs.length];
+        for (int i = 0; i < prefs.length; i++) {
+            first[i] = prefs[i][0] - 1;
+            second[i] = prefs[i][1] - 1;
+        }
+    }
+
+    @Override
+    public ArrayList<Var> arguments() {
+        ArrayList<Var> variables = new ArrayList<Var>(positions.length + 1);
+        for (IntVar v : positions) {
+            variables.add(v);
+        }
+        variables.add(violated);
+        return variables;
+    }
+
+    @Override
+    public void consistency(Store store) {
+        do {
+            store.propagationHasOccurred = false;
+
+            int sure = 0;
+            int open = 0;
+            for (int i = 0; i < first.length; i++) {
+                IntVar a = positions[first[i]];
+                IntVar b = positions[second[i]];
+                if (minDistance(a, b) > maxDiff) {
+                    sure++;
+                } else if (maxDistance(a, b) > maxDiff) {
+                    open++;
+                }
+            }
+
+            violated.domain.in(store.level, violated, sure, sure + open);
+
+            if (open == 0) {
+                continue;
+            }
+
+            if (violated.max() == sure) {
+                // every open preference must be satisfied
+                for (int i = 0; i < first.length; i++) {
+                    IntVar a = positions[first[i]];
+                    IntVar b = positions[second[i]];
+                    if (minDistance(a, b) <= maxDiff && maxDistance(a, b) > maxDiff) {
+                        a.domain.in(store.level, a, b.min() - maxDiff, b.max() + maxDiff);
+                        b.domain.in(store.level, b, a.min() - maxDiff, a.max() + maxDiff);
+                    }
+                }
+            } else if (violated.min() == sure + open) {
+                // every open preference must be violated
+                for (int i = 0; i < first.length; i++) {
+                    IntVar a = positions[first[i]];
+                    IntVar b = positions[second[i]];
+                    if (minDistance(a, b) <= maxDiff && maxDistance(a, b) > maxDiff) {
+                        // values within maxDiff of every value of the other person
+                        if (b.max() - maxDiff <= b.min() + maxDiff) {
+                            a.domain.inComplement(store.level, a, b.max() - maxDiff, b.min() + maxDiff);
+                        }
+                        if (a.max() - maxDiff <= a.min() + maxDiff) {
+                            b.domain.inComplement(store.level, b, a.max() - maxDiff, a.min() + maxDiff);
+                        }
+                    }
+                }
+            }
+        } while (store.propagationHasOccurred);
+    }
+
+    static int minDistance(IntVar a, IntVar b) {
+        return Math.max(0, Math.max(a.min() - b.max(), b.min() - a.max()));
+    }
+
+    static int maxDistance(IntVar a, IntVar b) {
+        return Math.max(a.max() - b.min(), b.max() - a.min());
+    }
+
+    @Override
+    public int getConsistencyPruningEvent(Var var) {
+        if (consistencyPruningEvents != null) {
+            Integer event = consistencyPruningEvents.get(var);
+            if (event != null) {
+                return event;
+            }
+        }
+        return IntDomain.BOUND;
+    }
+
+    @Override
+    public void impose(Store store) {
+        for (IntVar v : positions) {
+            v.putModelConstraint(this, getConsistencyPruningEvent(v));
+        }
+        violated.putModelConstraint(this, getConsistencyPruningEvent(violated));
+        store.addChanged(this);
+        store.countConstraint();
+    }
+
+    @Override
+    public void removeConstraint() {
+        for (IntVar v : positions) {
+            v.removeConstraint(this);
+        }
+        violated.removeConstraint(this);
+    }
+
+    @Override
+    public boolean satisfied() {
+        if (!violated.singleton()) {
+            return false;
+        }
+        int count = 0;
+        for (int i = 0; i < first.length; i++) {
+            IntVar a = positions[first[i]];
+            IntVar b = positions[second[i]];
+            if (!a.singleton() || !b.singleton()) {
+                return false;
+            }
+            if (Math.abs(a.value() - b.value()) > maxDiff) {
+                count++;
+            }
+        }
+        return count == violated.value();
+    }
+
+    @Override
+    public void increaseWeight() {
+        if (increaseWeight) {
+            for (IntVar v : positions) {
+                v.weight++;
+            }
+            violated.weight++;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(id() + " : AdjacencyCount([");
+        for (int i = 0; i < first.length; i++) {
+            if (i > 0) {
+                result.append(", ");
+            }
+            result.append(positions[first[i]] + "~" + positions[second[i]]);
+        }
+        result.append("], " + maxDiff + ", " + violated + ")");
+        return result.toString();
+    }
+}
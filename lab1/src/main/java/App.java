@@ -1,59 +1,169 @@
+import java.io.FileWriter;
+import java.io.IOException;
+
 import org.jacop.constraints.Alldiff;
 import org.jacop.constraints.Constraint;
 import org.jacop.constraints.Distance;
 import org.jacop.constraints.Reified;
 import org.jacop.constraints.Sum;
 import org.jacop.constraints.XgtC;
+import org.jacop.constraints.XlteqC;
+import org.jacop.constraints.XltY;
 import org.jacop.core.IntVar;
 import org.jacop.core.Store;
 import org.jacop.search.DepthFirstSearch;
 import org.jacop.search.IndomainMin;
 import org.jacop.search.PrintOutListener;
-import org.jacop.search.Search;
 import org.jacop.search.SelectChoicePoint;
 import org.jacop.search.SimpleSelect;
 import org.jacop.search.SmallestDomain;
 
 public class App {
 
-    public static void main(String[] args) {
+    /**
+     * Input 1
+     */
+    public static final int N_1 = 9;
+    public static final int[][] PREFS_1 = {{1,3}, {1,5}, {1,8},
+        {2,5}, {2,9}, {3,4}, {3,5}, {4,1},
+        {4,5}, {5,6}, {5,1}, {6,1}, {6,9},
+        {7,3}, {7,8}, {8,9}, {8,7}};
+
+    /**
+     * Input 2
+     */
+    public static final int N_2 = 11;
+    public static final int[][] PREFS_2 = {{1,3}, {1,5}, {2,5},
+        {2,8}, {2,9}, {3,4}, {3,5}, {4,1},
+        {4,5}, {4,6}, {5,1}, {6,1}, {6,9},
+        {7,3}, {7,5}, {8,9}, {8,7}, {8,10},
+        {9, 11}, {10, 11}};
+
+    /**
+     * Input 3
+     */
+    public static final int N_3 = 15;
+    public static final int[][] PREFS_3 = {{1,3}, {1,5}, {2,5},
+        {2,8}, {2,9}, {3,4}, {3,5}, {4,1},
+        {4,15}, {4,13}, {5,1}, {6,10}, {6,9},
+        {7,3}, {7,5}, {8,9}, {8,7}, {8,14},
+        {9, 13}, {10, 11}};
+
+    /**
+     * Instance data
+     */
+    final int n;
+    final int[][] prefs;
+    final int maxDiff;
+
+    /**
+     * Model, created by buildModel()
+     */
+    public Store store;
+    public IntVar[] vars;
+    public IntVar cost;
+
+    /**
+     * Search used by the last call to search()
+     */
+    public DepthFirstSearch<IntVar> search;
+
+    /**
+     * Metrics of the search, or null if not measured
+     */
+    public SearchMetrics metrics;
+
+    /**
+     * Receives every solution instead of the console, or null
+     */
+    public SolutionSink solutionSink;
+
+    /**
+     * Time limit of the search in seconds, 0 for no limit
+     */
+    public int timeOut = 0;
+
+    /**
+     * Models every preference with Distance and Reified instead of one
+     * AdjacencyCount, used to compare both models
+     */
+    public boolean decomposed = false;
+
+    /**
+     * Posts constraints that remove mirrored lineups and permutations of
+     * interchangeable people
+     */
+    public boolean breakSymmetries = true;
+
+    public App(int n, int[][] prefs, int maxDiff) {
+        this.n = n;
+        this.prefs = prefs;
+        this.maxDiff = maxDiff;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        // "-batch input ..." solves many instances, see BatchSolver
+        if (args.length > 0 && args[0].equals("-batch")) {
+            BatchSolver.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
 
         /**
          * Config stuff
          */
         int maxDiff = 1;
-
-        // Input 1
-        // int n = 9;
-        // int[][] prefs = {{1,3}, {1,5}, {1,8},
-        //     {2,5}, {2,9}, {3,4}, {3,5}, {4,1},
-        //     {4,5}, {5,6}, {5,1}, {6,1}, {6,9},
-        //     {7,3}, {7,8}, {8,9}, {8,7}};
-
-        // Input 2
-        // int n = 11;
-        // int[][] prefs = {{1,3}, {1,5}, {2,5},
-        //     {2,8}, {2,9}, {3,4}, {3,5}, {4,1},
-        //     {4,5}, {4,6}, {5,1}, {6,1}, {6,9},
-        //     {7,3}, {7,5}, {8,9}, {8,7}, {8,10},
-        //     {9, 11}, {10, 11}};
-
-        // Input 3
-        int n = 15;
-        int[][] prefs = {{1,3}, {1,5}, {2,5},
-           {2,8}, {2,9}, {3,4}, {3,5}, {4,1},
-           {4,15}, {4,13}, {5,1}, {6,10}, {6,9},
-           {7,3}, {7,5}, {8,9}, {8,7}, {8,14},
-           {9, 13}, {10, 11}};
+        int n = N_3;
+        int[][] prefs = PREFS_3;
 
         /**
          * End of config
          */
 
-        Store store = new Store();
+        App app = new App(n, prefs, maxDiff);
+        app.buildModel();
+
+        // "-metrics file" writes the search metrics to a .json or .csv file
+        // "-solutions file" writes every solution to a file on a background thread
+        String metricsFile = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-metrics")) {
+                metricsFile = args[i + 1];
+                app.metrics = new SearchMetrics();
+                app.metrics.setLogInterval(10000);
+            } else if (args[i].equals("-solutions")) {
+                app.solutionSink = new SolutionSink(new FileWriter(args[i + 1]), 1024);
+            }
+        }
+
+        boolean result = app.search(true, true);
+
+        if (app.solutionSink != null) {
+            app.solutionSink.close();
+        }
+        if (metricsFile != null) {
+            app.metrics.write(metricsFile);
+        }
+
+        if(result) {
+            System.out.println("\n*** Yes!");
+            System.out.println("Solution : "+ java.util.Arrays.asList(app.vars));
+            System.out.println("Satisfied preferences: " + (prefs.length - app.cost.value()));
+
+        } else {
+            System.out.println("NOOOO! ");
+        }
+    }
+
+    /**
+     * Creates the store with all variables and constraints
+     */
+    public void buildModel() {
+
+        store = new Store();
 
         // Create all variables
-        IntVar[] vars = new IntVar[n];
+        vars = new IntVar[n];
         for(int i = 0; i < n; i++) {
             vars[i] = new IntVar(store, "var:"+Integer.toString(i), 1, n);
         }
@@ -61,7 +171,18 @@ public class App {
         // Define constraints
         store.impose(new Alldiff(vars));
 
+        if (breakSymmetries) {
+            breakSymmetries();
+        }
+
+        cost = new IntVar(store, "cost", 0, prefs.length);
+
         // Define cost function
+        if (!decomposed) {
+            store.impose(new AdjacencyCount(vars, prefs, maxDiff, cost));
+            return;
+        }
+
         // Define one cost per preference
         IntVar[] costs = new IntVar[prefs.length];
         for(int i = 0; i < prefs.length; i++) {
@@ -84,31 +205,113 @@ public class App {
             store.impose(re);
         }
 
-        IntVar cost = new IntVar(store, "cost", 0, prefs.length);
         Constraint constConstr = new Sum(costs, cost);
         store.impose(constConstr);
+    }
+
+    /**
+     * Two people are interchangeable if they have the same number of
+     * preferences with everybody else; swapping them in a lineup keeps its
+     * cost. Interchangeable people are placed in increasing order. Reversing
+     * a lineup also keeps its cost, so two people that are not
+     * interchangeable with anybody are kept in order as well.
+     */
+    void breakSymmetries() {
+
+        // Number of preferences between every two people
+        int[][] count = new int[n][n];
+        int[] degree = new int[n];
+        for (int[] pref : prefs) {
+            int a = pref[0] - 1;
+            int b = pref[1] - 1;
+            count[a][b]++;
+            count[b][a]++;
+            degree[a]++;
+            degree[b]++;
+        }
+
+        // Interchangeability is an equivalence, so every person is compared
+        // with the first person of every class only
+        int[] last = new int[n];
+        int[] size = new int[n];
+        int[] first = new int[n];
+        for (int i = 0; i < n; i++) {
+            first[i] = i;
+            for (int j = 0; j < i; j++) {
+                if (first[j] == j && interchangeable(count, i, j)) {
+                    first[i] = j;
+                    break;
+                }
+            }
+            int c = first[i];
+            if (size[c] > 0) {
+                store.impose(new XltY(vars[last[c]], vars[i]));
+            }
+            last[c] = i;
+            size[c]++;
+        }
+
+        // Reversal: order the two people of highest degree that are alone in
+        // their class, or keep the only one in the first half
+        int a = -1;
+        int b = -1;
+        for (int i = 0; i < n; i++) {
+            if (size[first[i]] != 1) {
+                continue;
+            }
+            if (a == -1 || degree[i] > degree[a]) {
+                b = a;
+                a = i;
+            } else if (b == -1 || degree[i] > degree[b]) {
+                b = i;
+            }
+        }
+        if (b != -1) {
+            store.impose(new XltY(vars[a], vars[b]));
+        } else if (a != -1) {
+            store.impose(new XlteqC(vars[a], (n + 1) / 2));
+        }
+    }
+
+    static boolean interchangeable(int[][] count, int i, int j) {
+        for (int k = 0; k < count.length; k++) {
+            if (k != i && k != j && count[i][k] != count[j][k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches for the best solution, or for any solution if optimize is false
+     */
+    public boolean search(boolean optimize, boolean print) {
 
         // Try finding solution witht depth first search algorithm
-        Search<IntVar> search = new DepthFirstSearch<IntVar>();
+        search = new DepthFirstSearch<IntVar>();
 
         SelectChoicePoint<IntVar> select = new SimpleSelect<IntVar>(
-            vars, 
-            new SmallestDomain<IntVar>(), 
+            vars,
+            new SmallestDomain<IntVar>(),
             new IndomainMin<IntVar>()
         );
 
-        search.setSolutionListener(new PrintOutListener<IntVar>());
-
-        boolean result = search.labeling(store, select, cost);
-
-        if(result) {
-            System.out.println("\n*** Yes!");
-            System.out.println("Solution : "+ java.util.Arrays.asList(vars));
-            System.out.println("Satisfied preferences: " + (prefs.length - cost.value()));
+        search.setPrintInfo(print);
+        if (solutionSink != null) {
+            search.setSolutionListener(solutionSink.listener(vars));
+        } else if (print) {
+            search.setSolutionListener(new PrintOutListener<IntVar>());
+        }
+        if (metrics != null) {
+            metrics.attach(search);
+        }
+        if (timeOut > 0) {
+            search.setTimeOut(timeOut);
+        }
 
-        } else {
-            System.out.println("NOOOO! ");
+        if (optimize) {
+            return search.labeling(store, select, cost);
         }
+        return search.labeling(store, select);
     }
 }
-
@@ -0,0 +1,348 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Solves many photo instances in one JVM.
+ *
+ * Instances are read from a file, or from every file of a directory, one
+ * instance per line. A line is either a JSON record
+ *
+ *   {"name": "a", "n": 9, "maxDiff": 1, "prefs": [[1,3], [1,5]]}
+ *
+ * where name and maxDiff are optional, or plain integers: n, maxDiff and
+ * then the preference pairs. Empty lines and lines starting with # are
+ * skipped.
+ *
+ * The instances are solved by a pool of worker threads and every result is
+ * written as one JSON line as soon as it is done.
+ */
+public class BatchSolver {
+
+    static final Pattern N = Pattern.compile("\"n\"\\s*:\\s*(\\d+)");
+    static final Pattern MAX_DIFF = Pattern.compile("\"maxDiff\"\\s*:\\s*(\\d+)");
+    static final Pattern NAME = Pattern.compile("\"name\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+    static final Pattern PREFS = Pattern.compile("\"prefs\"\\s*:\\s*\\[((?:\\s*\\[[^\\]]*\\]\\s*,?)*)\\s*\\]");
+    static final Pattern INT = Pattern.compile("-?\\d+");
+
+    /**
+     * One instance of the input
+     */
+    static class Instance {
+        final String name;
+        final int n;
+        final int maxDiff;
+        final int[][] prefs;
+
+        Instance(String name, int n, int maxDiff, int[][] prefs) {
+            this.name = name;
+            this.n = n;
+            this.maxDiff = maxDiff;
+            this.prefs = prefs;
+        }
+    }
+
+    final int threads;
+
+    /**
+     * Time limit per instance in seconds, 0 for no limit
+     */
+    final int timeOut;
+
+    final PrintStream out;
+
+    public BatchSolver(int threads, int timeOut, PrintStream out) {
+        this.threads = threads;
+        this.timeOut = timeOut;
+        this.out = out;
+    }
+
+    /**
+     * Usage: BatchSolver input [-threads n] [-timeout seconds] [-out file]
+     *
+     * input is a file or a directory of files with one instance per line.
+     * Results are written to stdout unless -out is given.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: BatchSolver input [-threads n] [-timeout seconds] [-out file]");
+            return;
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        int timeOut = 0;
+        PrintStream out = System.out;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-timeout")) {
+                timeOut = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-out")) {
+                out = new PrintStream(new FileOutputStream(args[i + 1]), true);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        new BatchSolver(threads, timeOut, out).solve(read(new File(args[0])));
+        if (out != System.out) {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads all lines with an instance from a file, or from all files of a
+     * directory in name order. The lines are parsed by the workers, so that
+     * an invalid line only fails its own instance.
+     *
+     * @return file name and line number, and line of every instance
+     */
+    static List<String[]> read(File input) throws IOException {
+        File[] files = { input };
+        if (input.isDirectory()) {
+            files = input.listFiles(File::isFile);
+            Arrays.sort(files);
+        }
+
+        List<String[]> instances = new ArrayList<String[]>();
+        for (File file : files) {
+            List<String> lines = Files.readAllLines(file.toPath());
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i).trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                instances.add(new String[] { file.getName() + ":" + (i + 1), line });
+            }
+        }
+        return instances;
+    }
+
+    /**
+     * Parses one line of the input
+     *
+     * @param name used if the line does not name the instance
+     */
+    static Instance parse(String name, String line) {
+        int n;
+        int maxDiff = 1;
+        List<Integer> pairs = new ArrayList<Integer>();
+
+        if (line.startsWith("{")) {
+            Matcher m = NAME.matcher(line);
+            if (m.find()) {
+                name = unquote(m.group(1));
+            }
+            m = N.matcher(line);
+            if (!m.find()) {
+                throw new IllegalArgumentException(name + ": missing \"n\"");
+            }
+            n = Integer.parseInt(m.group(1));
+            m = MAX_DIFF.matcher(line);
+            if (m.find()) {
+                maxDiff = Integer.parseInt(m.group(1));
+            }
+            m = PREFS.matcher(line);
+            if (!m.find()) {
+                throw new IllegalArgumentException(name + ": missing \"prefs\"");
+            }
+            Matcher values = INT.matcher(m.group(1));
+            while (values.find()) {
+                pairs.add(Integer.parseInt(values.group()));
+            }
+        } else {
+            Matcher values = INT.matcher(line);
+            List<Integer> all = new ArrayList<Integer>();
+            while (values.find()) {
+                all.add(Integer.parseInt(values.group()));
+            }
+            if (all.size() < 2) {
+                throw new IllegalArgumentException(name + ": expected n and maxDiff");
+            }
+            n = all.get(0);
+            maxDiff = all.get(1);
+            pairs = all.subList(2, all.size());
+        }
+
+        if (pairs.size() % 2 != 0) {
+            throw new IllegalArgumentException(name + ": odd number of preference values");
+        }
+        int[][] prefs = new int[pairs.size() / 2][];
+        for (int i = 0; i < prefs.length; i++) {
+            prefs[i] = new int[] { pairs.get(2 * i), pairs.get(2 * i + 1) };
+            for (int person : prefs[i]) {
+                if (person < 1 || person > n) {
+                    throw new IllegalArgumentException(name + ": person " + person + " not in 1.." + n);
+                }
+            }
+        }
+        return new Instance(name, n, maxDiff, prefs);
+    }
+
+    /**
+     * Solves all instances and writes each result as soon as it is done
+     */
+    public void solve(List<String[]> instances) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<String> results = new ExecutorCompletionService<String>(pool);
+
+        try {
+            for (String[] instance : instances) {
+                results.submit(() -> solve(instance[0], instance[1]));
+            }
+
+            for (int i = 0; i < instances.size(); i++) {
+                try {
+                    out.println(results.take().get());
+                } catch (ExecutionException e) {
+                    // solve() reports its own exceptions, so this is an Error
+                    pool.shutdownNow();
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            // the workers are not daemons and would keep the JVM alive
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Parses and solves one instance
+     *
+     * @return the result as a JSON record
+     */
+    String solve(String name, String line) {
+        long start = System.currentTimeMillis();
+        StringBuilder result = new StringBuilder();
+        try {
+            Instance instance = parse(name, line);
+            result.append("{\"instance\": " + quote(instance.name));
+
+            App app = new App(instance.n, instance.prefs, instance.maxDiff);
+            app.timeOut = timeOut;
+            app.buildModel();
+            boolean found = app.search(true, false);
+
+            String status;
+            if (app.search.timeOutOccured) {
+                status = found ? "timeout" : "unknown";
+            } else {
+                status = found ? "optimal" : "infeasible";
+            }
+            result.append(", \"status\": " + quote(status));
+            if (found) {
+                int[] positions = new int[instance.n];
+                for (int i = 0; i < positions.length; i++) {
+                    positions[i] = app.vars[i].value();
+                }
+                result.append(", \"satisfied\": " + (instance.prefs.length - app.cost.value()));
+                result.append(", \"positions\": " + Arrays.toString(positions));
+            }
+            result.append(", \"nodes\": " + app.search.getNodes());
+        } catch (RuntimeException e) {
+            result.setLength(0);
+            result.append("{\"instance\": " + quote(name));
+            result.append(", \"status\": \"error\", \"message\": " + quote(e.toString()));
+        }
+        result.append(", \"timeMs\": " + (System.currentTimeMillis() - start) + "}");
+        return result.toString();
+    }
+
+    /**
+     * Returns the contents of a JSON string literal with its escapes
+     * replaced by the characters they stand for
+     */
+    static String unquote(String s) {
+        StringBuilder plain = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\') {
+                plain.append(c);
+                continue;
+            }
+            // the pattern ensures that a character follows
+            c = s.charAt(++i);
+            switch (c) {
+            case 'b':
+                plain.append('\b');
+                break;
+            case 'f':
+                plain.append('\f');
+                break;
+            case 'n':
+                plain.append('\n');
+                break;
+            case 'r':
+                plain.append('\r');
+                break;
+            case 't':
+                plain.append('\t');
+                break;
+            case 'u':
+                if (i + 4 >= s.length()) {
+                    throw new IllegalArgumentException("Invalid escape in name: \\" + s.substring(i));
+                }
+                try {
+                    plain.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid escape in name: \\" + s.substring(i, i + 5));
+                }
+                i += 4;
+                break;
+            default:
+                // \", \\ and \/ stand for the character itself
+                plain.append(c);
+            }
+        }
+        return plain.toString();
+    }
+
+    /**
+     * Returns the string as a JSON string literal, with quotes, backslashes
+     * and control characters escaped. Characters outside ASCII are escaped
+     * too, so the output does not depend on the default charset
+     */
+    static String quote(String s) {
+        StringBuilder quoted = new StringBuilder(s.length() + 2);
+        quoted.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                quoted.append("\\\"");
+                break;
+            case '\\':
+                quoted.append("\\\\");
+                break;
+            case '\n':
+                quoted.append("\\n");
+                break;
+            case '\r':
+                quoted.append("\\r");
+                break;
+            case '\t':
+                quoted.append("\\t");
+                break;
+            default:
+                if (c < 0x20 || c > 0x7e) {
+                    quoted.append(String.format("\\u%04x", (int) c));
+                } else {
+                    quoted.append(c);
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,82 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.jacop.constraints.XlteqC;
+import org.jacop.core.IntVar;
+import org.jacop.search.DepthFirstSearch;
+import org.jacop.search.IndomainMin;
+import org.jacop.search.Search;
+import org.jacop.search.SelectChoicePoint;
+import org.jacop.search.SimpleSelect;
+import org.jacop.search.SimpleSolutionListener;
+import org.junit.Test;
+
+/**
+ * Compares the AdjacencyCount model with the decomposed model on small
+ * random instances: both must have the same lineups with the same costs.
+ */
+public class AdjacencyCountTest {
+
+    @Test
+    public void sameSolutionsAsDecomposed() {
+        Random random = new Random(1);
+        for (int instance = 0; instance < 200; instance++) {
+            int n = 2 + random.nextInt(5);
+            int[][] prefs = new int[random.nextInt(2 * n)][];
+            for (int i = 0; i < prefs.length; i++) {
+                int a = 1 + random.nextInt(n);
+                int b = 1 + random.nextInt(n - 1);
+                prefs[i] = new int[] { a, b < a ? b : b + 1 };
+            }
+            int maxDiff = 1 + random.nextInt(2);
+            // a bound on the cost makes the propagator force preferences
+            int bound = random.nextInt(prefs.length + 1);
+
+            String name = "n = " + n + ", maxDiff = " + maxDiff + ", cost <= " + bound + ", prefs = "
+                    + Arrays.deepToString(prefs);
+            assertEquals(name, solutions(n, prefs, maxDiff, bound, true), solutions(n, prefs, maxDiff, bound, false));
+        }
+    }
+
+    /**
+     * Returns every lineup and its cost, the cost labeled first
+     */
+    static List<String> solutions(int n, int[][] prefs, int maxDiff, int bound, boolean decomposed) {
+        App app = new App(n, prefs, maxDiff);
+        app.decomposed = decomposed;
+        app.breakSymmetries = false;
+        app.buildModel();
+        app.store.impose(new XlteqC(app.cost, bound));
+
+        IntVar[] vars = new IntVar[n + 1];
+        vars[0] = app.cost;
+        System.arraycopy(app.vars, 0, vars, 1, n);
+
+        List<String> found = new ArrayList<String>();
+        DepthFirstSearch<IntVar> search = new DepthFirstSearch<IntVar>();
+        search.setPrintInfo(false);
+        search.setSolutionListener(new SimpleSolutionListener<IntVar>() {
+
+            @Override
+            public boolean executeAfterSolution(Search<IntVar> s, SelectChoicePoint<IntVar> select) {
+                boolean result = super.executeAfterSolution(s, select);
+                int[] values = new int[vars.length];
+                for (int i = 0; i < vars.length; i++) {
+                    values[i] = vars[i].value();
+                }
+                found.add(Arrays.toString(values));
+                return result;
+            }
+        });
+        search.getSolutionListener().searchAll(true);
+        search.getSolutionListener().recordSolutions(false);
+        search.labeling(app.store, new SimpleSelect<IntVar>(vars, null, new IndomainMin<IntVar>()));
+
+        found.sort(null);
+        return found;
+    }
+}
@@ -0,0 +1,108 @@
+package bench;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jacop.core.Store;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the EdgeUsage cost model of App with the IfThen decomposition
+ * as the number of destinations grows, on a random graph with 60 nodes
+ * and 180 edges.
+ *
+ * Proving the cheapest solution is out of reach with many destinations,
+ * so the benchmarks measure construction, propagation at the root and
+ * time to the first solution. The search recurses once per variable, 60
+ * per destination, hence the larger stack.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class DestinationsBenchmark {
+
+    static final int NODES = 60;
+
+    @Param({ "2", "5", "10", "20", "50" })
+    int dests;
+
+    @Param({ "global", "decomposed" })
+    String model;
+
+    Object app;
+
+    Field store;
+    Method buildModel;
+    Method search;
+
+    @Setup(Level.Trial)
+    public void resolve() throws ReflectiveOperationException {
+        // a random tree, so that every node can be reached, and random edges
+        Random random = new Random(NODES);
+        int[] from = new int[3 * NODES];
+        int[] to = new int[3 * NODES];
+        int[] cost = new int[3 * NODES];
+        for (int i = 0; i < from.length; i++) {
+            if (i < NODES - 1) {
+                from[i] = 1 + random.nextInt(i + 1);
+                to[i] = i + 2;
+            } else {
+                from[i] = 1 + random.nextInt(NODES);
+                to[i] = 1 + random.nextInt(NODES - 1);
+                to[i] = to[i] >= from[i] ? to[i] + 1 : to[i];
+            }
+            cost[i] = 1 + random.nextInt(20);
+        }
+        int[] dest = new int[dests];
+        for (int i = 0; i < dests; i++) {
+            dest[i] = NODES - i;
+        }
+
+        Class<?> c = Class.forName("App");
+        Constructor<?> constructor = c.getConstructor(int.class, int.class, int[].class, int[].class, int[].class,
+                int[].class);
+        app = constructor.newInstance(NODES, 1, dest, from, to, cost);
+        c.getField("decomposed").setBoolean(app, model.equals("decomposed"));
+        store = c.getField("store");
+        buildModel = c.getMethod("buildModel");
+        search = c.getMethod("search", boolean.class, boolean.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void build() throws ReflectiveOperationException {
+        buildModel.invoke(app);
+    }
+
+    @Benchmark
+    public Object construction() throws ReflectiveOperationException {
+        buildModel.invoke(app);
+        return app;
+    }
+
+    @Benchmark
+    public boolean rootPropagation() throws ReflectiveOperationException {
+        return ((Store) store.get(app)).consistency();
+    }
+
+    @Benchmark
+    public Object firstSolution() throws ReflectiveOperationException {
+        return search.invoke(app, false, false);
+    }
+}
@@ -1,18 +1,30 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.jacop.constraints.Constraint;
+import org.jacop.constraints.Element;
 import org.jacop.constraints.IfThen;
+import org.jacop.constraints.LinearInt;
 import org.jacop.constraints.PrimitiveConstraint;
 import org.jacop.constraints.Subcircuit;
 import org.jacop.constraints.Sum;
+import org.jacop.constraints.SumInt;
 import org.jacop.constraints.XeqC;
+import org.jacop.constraints.XlteqY;
 import org.jacop.core.IntVar;
 import org.jacop.core.Store;
 import org.jacop.search.DepthFirstSearch;
 import org.jacop.search.IndomainMin;
 import org.jacop.search.PrintOutListener;
-import org.jacop.search.Search;
 import org.jacop.search.SelectChoicePoint;
 import org.jacop.search.SimpleMatrixSelect;
 import org.jacop.search.SmallestDomain;
@@ -22,105 +34,309 @@ import org.jacop.search.SmallestDomain;
  */
 public class App {
 
-    public static void main(String[] args) {
+    /**
+     * Instance data
+     */
+    final int graph_size;
+    final int start;
+    final int[] dest;
+    final int[] from;
+    final int[] to;
+    final int[] cost;
+
+    /**
+     * Model, created by buildModel()
+     */
+    public Store store;
+    public IntVar[][] vars;
+    public IntVar totalCost;
+    public IntVar[] pathCost;
+
+    /**
+     * Adjacency in compressed sparse row form: the neighbours of node i are
+     * adjacent[offset[i]] to adjacent[offset[i + 1] - 1], with the cost of
+     * the edge in adjacentCost. Between two nodes with several edges, every
+     * edge costs as much as the last one given, in edgeCost too.
+     */
+    int[] offset;
+    int[] adjacent;
+    int[] adjacentCost;
+    int[] edgeCost;
+
+    /**
+     * Search used by the last call to search()
+     */
+    public DepthFirstSearch<IntVar> search;
+
+    /**
+     * Metrics of the search, or null if not measured
+     */
+    public SearchMetrics metrics;
+
+    /**
+     * Receives every solution instead of the console, or null
+     */
+    public SolutionSink solutionSink;
+
+    /**
+     * Bound every path by the shortest path on the current domains
+     */
+    public boolean shortestPathBound = true;
+
+    /**
+     * Pay the edges with two IfThen constraints per edge and destination
+     * instead of one EdgeUsage constraint
+     */
+    public boolean decomposed = false;
+
+    public App(int graph_size, int start, int[] dest, int[] from, int[] to, int[] cost) {
+        this.graph_size = graph_size;
+        this.start = start;
+        this.dest = dest;
+        this.from = from;
+        this.to = to;
+        this.cost = cost;
+    }
+
+    /**
+     * Returns a new model of one of the three inputs, so that the flags and
+     * the search of one caller do not leak to another
+     *
+     * @param number 1, 2 or 3
+     */
+    public static App input(int number) {
+        switch (number) {
+        case 1:
+            return new App(6, 1,
+                    new int[] { 6 },
+                    new int[] { 1, 1, 2, 2, 3, 4, 4 },
+                    new int[] { 2, 3, 3, 4, 5, 5, 6 },
+                    new int[] { 4, 2, 5, 10, 3, 4, 11 });
+        case 2:
+            return new App(6, 1,
+                    new int[] { 5, 6 },
+                    new int[] { 1, 1, 2, 2, 3, 4, 4 },
+                    new int[] { 2, 3, 3, 4, 5, 5, 6 },
+                    new int[] { 4, 2, 5, 10, 3, 4, 11 });
+        case 3:
+            return new App(6, 1,
+                    new int[] { 5, 6 },
+                    new int[] { 1, 1, 1, 2, 2, 3, 3, 3, 4 },
+                    new int[] { 2, 3, 4, 3, 5, 4, 5, 6, 6 },
+                    new int[] { 6, 1, 5, 5, 3, 5, 6, 4, 2 });
+        default:
+            throw new IllegalArgumentException("No input " + number);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        // "-fzn model [data ...] ..." solves a MiniZinc or FlatZinc model, see FlatZinc
+        if (args.length > 0 && args[0].equals("-fzn")) {
+            FlatZinc.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         System.out.println("Starting lab 2");
 
-        /**
-         * Input 1
-         */
-        // int graph_size = 6;
-        // int start = 1;
-        // // int n_dests = 1;
-        // int[] dest = { 6 };
-        // // int n_edges = 7;
-        // int[] from = { 1, 1, 2, 2, 3, 4, 4 };
-        // int[] to = { 2, 3, 3, 4, 5, 5, 6 };
-        // int[] cost = { 4, 2, 5, 10, 3, 4, 11 };
+        App app = input(3);
 
-        /**
-         * Input 2
-         */
-        // int graph_size = 6;
-        // int start = 1;
-        // // int n_dests = 2;
-        // int[] dest = { 5, 6 };
-        // // int n_edges = 7;
-        // int[] from = { 1, 1, 2, 2, 3, 4, 4 };
-        // int[] to = { 2, 3, 3, 4, 5, 5, 6 };
-        // int[] cost = { 4, 2, 5, 10, 3, 4, 11 };
+        // "-graph file" solves a graph loaded from a file instead
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-graph")) {
+                app = load(args[i + 1]);
+            }
+        }
 
-        /**
-         * Input 3
-         */
-        int graph_size = 6;
-        int start = 1;
-        // int n_dests = 2;
-        int[] dest = { 5, 6 };
-        // int n_edges = 9;
-        int[] from = { 1, 1, 1, 2, 2, 3, 3, 3, 4 };
-        int[] to = { 2, 3, 4, 3, 5, 4, 5, 6, 6 };
-        int[] cost = { 6, 1, 5, 5, 3, 5, 6, 4, 2 };
+        app.buildModel();
+
+        // "-metrics file" writes the search metrics to a .json or .csv file
+        // "-solutions file" writes every solution to a file on a background thread
+        String metricsFile = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-metrics")) {
+                metricsFile = args[i + 1];
+                app.metrics = new SearchMetrics();
+                app.metrics.setLogInterval(10000);
+            } else if (args[i].equals("-solutions")) {
+                app.solutionSink = new SolutionSink(new FileWriter(args[i + 1]), 1024);
+            }
+        }
+
+        boolean result = app.search(true, true);
+
+        if (app.solutionSink != null) {
+            app.solutionSink.close();
+        }
+        if (metricsFile != null) {
+            app.metrics.write(metricsFile);
+        }
+
+        if (result) {
+            System.out.println("\n*** Yes!");
+            for (IntVar[] sol : app.vars) {
+                System.out.println("Solution : " + java.util.Arrays.asList(sol));
+
+            }
+            System.out.println("Cost: " + app.totalCost.value());
+
+        } else {
+            System.out.println("NOOOO! ");
+        }
+    }
+
+    /**
+     * Loads a graph written like the MiniZinc data of the lab:
+     *
+     *   graph_size = 6;
+     *   start = 1;
+     *   dest = [6];
+     *   from = [1,1,2,2,3,4,4];
+     *   to = [2,3,3,4,5,5,6];
+     *   cost = [4,2,5,10,3,4,11];
+     *
+     * Other assignments and % comments are ignored.
+     */
+    public static App load(String file) throws IOException {
+        String text = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        text = text.replaceAll("%[^\\n]*", "");
+
+        Map<String, int[]> values = new HashMap<String, int[]>();
+        Pattern integer = Pattern.compile("-?\\d+");
+        Matcher assignment = Pattern.compile("(\\w+)\\s*=\\s*([^;]*);").matcher(text);
+        while (assignment.find()) {
+            Matcher number = integer.matcher(assignment.group(2));
+            int[] numbers = new int[16];
+            int count = 0;
+            while (number.find()) {
+                if (count == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, 2 * count);
+                }
+                numbers[count++] = Integer.parseInt(number.group());
+            }
+            values.put(assignment.group(1), Arrays.copyOf(numbers, count));
+        }
+
+        for (String name : new String[] { "graph_size", "start", "dest", "from", "to", "cost" }) {
+            if (!values.containsKey(name)) {
+                throw new IllegalArgumentException(file + ": missing " + name);
+            }
+        }
+        int[] from = values.get("from");
+        int[] to = values.get("to");
+        int[] cost = values.get("cost");
+        if (from.length != to.length || from.length != cost.length) {
+            throw new IllegalArgumentException(file + ": from, to and cost differ in length");
+        }
+        return new App(values.get("graph_size")[0], values.get("start")[0], values.get("dest"), from, to, cost);
+    }
+
+    /**
+     * Creates the store with all variables and constraints
+     */
+    public void buildModel() {
 
-        Store store = new Store();
+        store = new Store();
+
+        buildAdjacency();
+
+        // Cost of the edge to every node from the node being built, 0 if
+        // there is none
+        int[] costTo = new int[graph_size + 1];
 
         // Create variables holder
-        IntVar[][] vars = new IntVar[dest.length][graph_size];
+        vars = new IntVar[dest.length][graph_size];
+        pathCost = new IntVar[dest.length];
 
         for (int dest_index = 0; dest_index < dest.length; dest_index++) {
 
+            int destNode = dest[dest_index];
+            IntVar[] stepCosts = new IntVar[graph_size];
+
             // Build graph
-            for (int i = 1; i < vars[dest_index].length + 1; i++) {
-                // Create variable
-                vars[dest_index][i - 1] = new IntVar(store, Integer.toString(dest_index) + ":" + Integer.toString(i));
-
-                // Add edges
-                for (int j = 0; j < from.length; j++) {
-                    int from_val = from[j];
-                    int to_val = to[j];
-                    if (from_val == i) {
-                        vars[dest_index][i - 1].addDom(to_val, to_val);
-                    }
-                    if (to_val == i) {
-                        vars[dest_index][i - 1].addDom(from_val, from_val);
-                    }
-                }
+            for (int i = 1; i < graph_size + 1; i++) {
 
-                // You may go to yourself, if you are not the startnode
-                if (i != start) {
-                    vars[dest_index][i - 1].addDom(i, i);
-                }
-            }
+                // Successors are the neighbours, yourself if you are not the
+                // startnode, and start for dest (enables subcircuit)
+                int[] next = successors(i, i != start, i == destNode);
+                int[] nextCost = new int[next.length];
 
-            // dest may go to start (enables subcircuit)
-            int dest_val = dest[dest_index];
-            vars[dest_index][dest_val - 1].addDom(start, start);
+                for (int k = offset[i]; k < offset[i + 1]; k++) {
+                    costTo[adjacent[k]] = adjacentCost[k];
+                }
+                IntVar var = new IntVar(store, Integer.toString(dest_index) + ":" + Integer.toString(i));
+                for (int k = 0; k < next.length; k++) {
+                    var.addDom(next[k], next[k]);
+                    // the step from dest back to start only closes the circuit
+                    nextCost[k] = i == destNode ? 0 : costTo[next[k]];
+                }
+                for (int k = offset[i]; k < offset[i + 1]; k++) {
+                    costTo[adjacent[k]] = 0;
+                }
+                vars[dest_index][i - 1] = var;
 
-            // Print initial domains
-            // System.out.println(Arrays.toString(vars[dest_index]));
+                // Cost of the step taken from i, looked up by the position of
+                // the successor in the adjacency list
+                IntVar position = new IntVar(store, 0, next.length - 1);
+                stepCosts[i - 1] = new IntVar(store, 0, max(nextCost));
+                store.impose(new Element(position, next, var, -1));
+                store.impose(new Element(position, nextCost, stepCosts[i - 1], -1));
+            }
 
             // Constraint special edge to be included in subcircuit
-            int destNode = dest[dest_index];
             Constraint eq_c = new XeqC(vars[dest_index][destNode - 1], start);
             store.impose(eq_c);
 
             // Impose subcircuit constraint
             Constraint subcircuit = new Subcircuit(vars[dest_index]);
             store.impose(subcircuit);
+
+            // Cost of the path to this dest alone
+            pathCost[dest_index] = new IntVar(store, "path" + dest_index, 0, sum(cost));
+            store.impose(new SumInt(store, stepCosts, "==", pathCost[dest_index]));
+
+            if (shortestPathBound) {
+                store.impose(new ShortestPathBound(vars[dest_index], start, destNode, offset, adjacent, adjacentCost,
+                        pathCost[dest_index]));
+            }
         }
 
         /**
          * Define cost function
          */
 
-        //  Build cost matrix
-        int[][] edge_costs = new int[graph_size + 1][graph_size + 1];
-        for (int i = 0; i < from.length; i++) {
-            int from_val = from[i];
-            int to_val = to[i];
-            edge_costs[from_val][to_val] = cost[i];
-            edge_costs[to_val][from_val] = cost[i];
+        totalCost = new IntVar(store, "cost", 0, sum(cost));
+
+        // The shared edges cost at least as much as any single path
+        for (IntVar path : pathCost) {
+            store.impose(new XlteqY(path, totalCost));
+        }
+
+        if (decomposed) {
+            buildDecomposedCost();
+            return;
+        }
+
+        // Every edge is paid once, however many paths use it
+        IntVar[] used = new IntVar[from.length];
+        for (int edge_index = 0; edge_index < from.length; edge_index++) {
+            used[edge_index] = new IntVar(store, "used" + edge_index, 0, 1);
         }
+        store.impose(new EdgeUsage(vars, dest, from, to, used));
 
+        // sum of cost[i] * used[i] - totalCost == 0
+        IntVar[] paid = Arrays.copyOf(used, used.length + 1);
+        paid[used.length] = totalCost;
+        int[] weights = Arrays.copyOf(cost, cost.length + 1);
+        weights[cost.length] = -1;
+        store.impose(new LinearInt(store, paid, weights, "==", 0));
+    }
+
+    /**
+     * Pays every edge used by any path with IfThen constraints, two for
+     * every edge and destination
+     */
+    void buildDecomposedCost() {
         ArrayList<IntVar> costs = new ArrayList<IntVar>();
 
         for (int edge_index = 0; edge_index < from.length; edge_index++) {
@@ -133,54 +349,149 @@ public class App {
                 PrimitiveConstraint if_c, then_c;
                 Constraint if_then;
 
-                // from --> to
-                if_c = new XeqC(vars[destIndex][edge_from - 1], edge_to);
-                then_c = new XeqC(cost_i, edge_costs[edge_from][edge_to]);
-                if_then = new IfThen(if_c, then_c);
-                store.impose(if_then);
+                // from --> to, unless it closes the circuit at dest
+                if (edge_from != dest[destIndex]) {
+                    if_c = new XeqC(vars[destIndex][edge_from - 1], edge_to);
+                    then_c = new XeqC(cost_i, edgeCost[edge_index]);
+                    if_then = new IfThen(if_c, then_c);
+                    store.impose(if_then);
+                }
 
                 // to --> from
-                if_c = new XeqC(vars[destIndex][edge_to - 1], edge_from);
-                then_c = new XeqC(cost_i, edge_costs[edge_to][edge_from]);
-                if_then = new IfThen(if_c, then_c);
-                store.impose(if_then);
+                if (edge_to != dest[destIndex]) {
+                    if_c = new XeqC(vars[destIndex][edge_to - 1], edge_from);
+                    then_c = new XeqC(cost_i, edgeCost[edge_index]);
+                    if_then = new IfThen(if_c, then_c);
+                    store.impose(if_then);
+                }
             }
         }
-        int maxEdgeCost = 11;
-        IntVar totalCost = new IntVar(store, "cost", 0, maxEdgeCost * maxEdgeCost);
         Constraint costConstr = new Sum(costs, totalCost);
         store.impose(costConstr);
+    }
+
+    /**
+     * Builds the adjacency lists of all nodes in compressed sparse row
+     * form, in time and memory linear in the number of edges and nodes
+     */
+    void buildAdjacency() {
+        offset = new int[graph_size + 2];
+        for (int i = 0; i < from.length; i++) {
+            offset[from[i] + 1]++;
+            offset[to[i] + 1]++;
+        }
+        for (int i = 1; i < offset.length; i++) {
+            offset[i] += offset[i - 1];
+        }
+
+        adjacent = new int[2 * from.length];
+        adjacentCost = new int[2 * from.length];
+        int[] slot = new int[from.length];
+        int[] fill = Arrays.copyOf(offset, offset.length);
+        for (int i = 0; i < from.length; i++) {
+            slot[i] = fill[from[i]];
+            adjacent[fill[from[i]]] = to[i];
+            adjacentCost[fill[from[i]]++] = cost[i];
+            adjacent[fill[to[i]]] = from[i];
+            adjacentCost[fill[to[i]]++] = cost[i];
+        }
+
+        // The edges of a node are in input order, so the last cost written
+        // for a neighbour is the one of the last edge
+        int[] last = new int[graph_size + 1];
+        for (int i = 1; i < graph_size + 1; i++) {
+            for (int k = offset[i]; k < offset[i + 1]; k++) {
+                last[adjacent[k]] = adjacentCost[k];
+            }
+            for (int k = offset[i]; k < offset[i + 1]; k++) {
+                adjacentCost[k] = last[adjacent[k]];
+            }
+        }
+        edgeCost = new int[from.length];
+        for (int i = 0; i < from.length; i++) {
+            edgeCost[i] = adjacentCost[slot[i]];
+        }
+    }
+
+    /**
+     * Returns the neighbours of a node in increasing order, each once,
+     * optionally with the node itself and start
+     */
+    int[] successors(int node, boolean self, boolean toStart) {
+        int degree = offset[node + 1] - offset[node];
+        int[] next = Arrays.copyOfRange(adjacent, offset[node], offset[node] + degree + 2);
+        int length = degree;
+        if (self) {
+            next[length++] = node;
+        }
+        if (toStart) {
+            next[length++] = start;
+        }
+        Arrays.sort(next, 0, length);
+
+        int unique = 0;
+        for (int k = 0; k < length; k++) {
+            if (unique == 0 || next[k] != next[unique - 1]) {
+                next[unique++] = next[k];
+            }
+        }
+        return Arrays.copyOf(next, unique);
+    }
+
+    static int sum(int[] values) {
+        int result = 0;
+        for (int v : values) {
+            result += v;
+        }
+        return result;
+    }
+
+    static int max(int[] values) {
+        int result = 0;
+        for (int v : values) {
+            result = Math.max(result, v);
+        }
+        return result;
+    }
+
+    /**
+     * Searches for the cheapest solution, or for any solution if optimize is false
+     */
+    public boolean search(boolean optimize, boolean print) {
 
         /**
          * Initiate search
          */
-        Search<IntVar> search = new DepthFirstSearch<IntVar>();
+        search = new DepthFirstSearch<IntVar>();
 
         SelectChoicePoint<IntVar> select = new SimpleMatrixSelect<IntVar>(vars, new SmallestDomain<IntVar>(),
                 new IndomainMin<IntVar>());
 
-        search.setSolutionListener(new PrintOutListener<IntVar>());
-
-        boolean result = search.labeling(store, select, totalCost);
+        search.setPrintInfo(print);
+        if (solutionSink != null) {
+            search.setSolutionListener(solutionSink.listener(flatten(vars)));
+        } else if (print) {
+            search.setSolutionListener(new PrintOutListener<IntVar>());
+        }
+        if (metrics != null) {
+            metrics.attach(search);
+        }
 
-        if (result) {
-            System.out.println("\n*** Yes!");
-            for (IntVar[] sol : vars) {
-                System.out.println("Solution : " + java.util.Arrays.asList(sol));
+        if (optimize) {
+            return search.labeling(store, select, totalCost);
+        }
+        return search.labeling(store, select);
+    }
 
+    public static IntVar[] flatten(IntVar[][] matrix) {
+        IntVar[] flat = new IntVar[matrix.length * matrix[0].length];
+        int index = 0;
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[0].length; j++) {
+                flat[index] = matrix[i][j];
+                index++;
             }
-            System.out.println("Cost: " + totalCost.value());
-
-        } else {
-            System.out.println("NOOOO! ");
         }
-
-        // // Print all vars
-        // for (IntVar var : vars[0]) {
-        //     System.out.println(var);
-        // }
-        // for (IntVar var : vars[1]) {
-        //     System.out.println(var);
-        // }
+        return flat;
     }
 }
@@ -0,0 +1,332 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jacop.constraints.Constraint;
+import org.jacop.core.IntDomain;
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+import org.jacop.core.Var;
+
+/**
+ * Tells which edges are used by the paths of any destination:
+ *
+ *   used[e] = OR over d of (next[d][from[e]] == to[e] or next[d][to[e]] == from[e])
+ *
+ * The step from a dest back to start only closes its circuit and does not
+ * use an edge.
+ *
+ * One propagator replaces the two IfThen constraints per edge and
+ * destination. Only the edges at the nodes whose successors changed since
+ * the last call are looked at. An edge is used as soon as one path takes
+ * it and unused when no path can take it any more. An unused edge is
+ * removed from all paths, and a used edge that only one path can still
+ * take is taken by that path.
+ */
+public class EdgeUsage extends Constraint {
+
+    static int idNumber = 1;
+
+    /**
+     * Successor of every node for every destination, nodes numbered from 1
+     */
+    final IntVar[][] next;
+
+    /**
+     * Last node of every path, whose successor is start
+     */
+    final int[] dest;
+
+    final int[] from;
+    final int[] to;
+
+    /**
+     * 0/1 variable of every edge
+     */
+    final IntVar[] used;
+
+    /**
+     * Edges at every node: incident[incidentOffset[i]] to
+     * incident[incidentOffset[i + 1] - 1]
+     */
+    final int[] incidentOffset;
+    final int[] incident;
+
+    /**
+     * Position of every variable: d * nodes + i - 1 for next[d][i - 1],
+     * and next.length * nodes + e for used[e]
+     */
+    final Map<Var, Integer> position;
+
+    /**
+     * Edges to look at in the next call, and whether an edge is among them
+     */
+    final int[] pending;
+    final boolean[] isPending;
+    int pendingSize = 0;
+
+    boolean firstConsistencyCheck = true;
+
+    /**
+     * @param next successor variables of the Subcircuit of every destination
+     * @param dest destination of every path
+     * @param from first node of every edge
+     * @param to second node of every edge
+     * @param used 0/1 variable of every edge
+     */
+    public EdgeUsage(IntVar[][] next, int[] dest, int[] from, int[] to, IntVar[] used) {
+        numberId = idNumber++;
+        int nodes = next[0].length;
+        numberArgs = next.length * nodes + used.length;
+
+        this.next = next;
+        this.dest = dest;
+        this.from = from;
+        this.to = to;
+        this.used = used;
+
+        incidentOffset = new int[nodes + 2];
+        for (int e = 0; e < from.length; e++) {
+            incidentOffset[from[e] + 1]++;
+            incidentOffset[to[e] + 1]++;
+        }
+        for (int i = 1; i < incidentOffset.length; i++) {
+            incidentOffset[i] += incidentOffset[i - 1];
+        }
+        incident = new int[2 * from.length];
+        int[] fill = incidentOffset.clone();
+        for (int e = 0; e < from.length; e++) {
+            incident[fill[from[e]]++] = e;
+            incident[fill[to[e]]++] = e;
+        }
+
+        position = new HashMap<Var, Integer>(numberArgs * 2);
+        for (int d = 0; d < next.length; d++) {
+            for (int i = 0; i < nodes; i++) {
+                position.put(next[d][i], d * nodes + i);
+            }
+        }
+        for (int e = 0; e < used.length; e++) {
+            position.put(used[e], next.length * nodes + e);
+        }
+
+        pending = new int[from.length];
+        isPending = new boolean[from.length];
+    }
+
+    @Override
+    public ArrayList<Var> arguments() {
+        ArrayList<Var> variables = new ArrayList<Var>(numberArgs);
+        for (IntVar[] path : next) {
+            for (IntVar v : path) {
+                variables.add(v);
+            }
+        }
+        for (IntVar v : used) {
+            variables.add(v);
+        }
+        return variables;
+    }
+
+    @Override
+    public void queueVariable(int level, Var var) {
+        Integer p = position.get(var);
+        if (p == null) {
+            return;
+        }
+        int nodes = next[0].length;
+        if (p >= next.length * nodes) {
+            addPending(p - next.length * nodes);
+        } else {
+            addPendingAt(p % nodes + 1);
+        }
+    }
+
+    void addPending(int edge) {
+        if (!isPending[edge]) {
+            isPending[edge] = true;
+            pending[pendingSize++] = edge;
+        }
+    }
+
+    void addPendingAt(int node) {
+        for (int k = incidentOffset[node]; k < incidentOffset[node + 1]; k++) {
+            addPending(incident[k]);
+        }
+    }
+
+    @Override
+    public void consistency(Store store) {
+        if (firstConsistencyCheck) {
+            for (int e = 0; e < from.length; e++) {
+                addPending(e);
+            }
+            firstConsistencyCheck = false;
+        }
+
+        try {
+            while (pendingSize > 0) {
+                int e = pending[--pendingSize];
+                isPending[e] = false;
+                consistency(store, e);
+            }
+        } finally {
+            // left over after a failure; the store backtracks anyway
+            while (pendingSize > 0) {
+                isPending[pending[--pendingSize]] = false;
+            }
+        }
+    }
+
+    /**
+     * Propagates one edge, and queues the edges at every node whose
+     * successor is changed
+     */
+    void consistency(Store store, int e) {
+        int a = from[e];
+        int b = to[e];
+        IntVar use = used[e];
+
+        if (use.max() == 0) {
+            for (int d = 0; d < next.length; d++) {
+                remove(store, next[d], dest[d], a, b);
+                remove(store, next[d], dest[d], b, a);
+            }
+            return;
+        }
+
+        int supports = 0;
+        IntVar support = null;
+        int supportValue = 0;
+        for (int d = 0; d < next.length; d++) {
+            IntVar forward = next[d][a - 1];
+            if (a != dest[d] && forward.domain.contains(b)) {
+                if (forward.singleton()) {
+                    use.domain.in(store.level, use, 1, 1);
+                    return;
+                }
+                supports++;
+                support = forward;
+                supportValue = b;
+            }
+            IntVar backward = next[d][b - 1];
+            if (b != dest[d] && backward.domain.contains(a)) {
+                if (backward.singleton()) {
+                    use.domain.in(store.level, use, 1, 1);
+                    return;
+                }
+                supports++;
+                support = backward;
+                supportValue = a;
+            }
+            if (supports > 1 && use.min() == 1) {
+                // used, and no path has to take it
+                return;
+            }
+        }
+
+        if (supports == 0) {
+            use.domain.in(store.level, use, 0, 0);
+        } else if (supports == 1 && use.min() == 1) {
+            support.domain.in(store.level, support, supportValue, supportValue);
+            addPendingAt(supportValue == b ? a : b);
+        }
+    }
+
+    void remove(Store store, IntVar[] path, int last, int node, int value) {
+        IntVar var = path[node - 1];
+        if (node != last && var.domain.contains(value)) {
+            var.domain.inComplement(store.level, var, value);
+            if (var.singleton()) {
+                addPendingAt(node);
+            }
+        }
+    }
+
+    @Override
+    public int getConsistencyPruningEvent(Var var) {
+        if (consistencyPruningEvents != null) {
+            Integer event = consistencyPruningEvents.get(var);
+            if (event != null) {
+                return event;
+            }
+        }
+        return IntDomain.ANY;
+    }
+
+    @Override
+    public void impose(Store store) {
+        for (IntVar[] path : next) {
+            for (IntVar v : path) {
+                v.putModelConstraint(this, getConsistencyPruningEvent(v));
+            }
+        }
+        for (IntVar v : used) {
+            v.putModelConstraint(this, getConsistencyPruningEvent(v));
+        }
+        store.addChanged(this);
+        store.countConstraint();
+    }
+
+    @Override
+    public void removeConstraint() {
+        for (IntVar[] path : next) {
+            for (IntVar v : path) {
+                v.removeConstraint(this);
+            }
+        }
+        for (IntVar v : used) {
+            v.removeConstraint(this);
+        }
+    }
+
+    @Override
+    public boolean satisfied() {
+        for (int e = 0; e < from.length; e++) {
+            if (!used[e].singleton()) {
+                return false;
+            }
+            boolean taken = false;
+            for (int d = 0; d < next.length; d++) {
+                IntVar forward = next[d][from[e] - 1];
+                IntVar backward = next[d][to[e] - 1];
+                if (!forward.singleton() || !backward.singleton()) {
+                    return false;
+                }
+                taken |= from[e] != dest[d] && forward.value() == to[e];
+                taken |= to[e] != dest[d] && backward.value() == from[e];
+            }
+            if (taken != (used[e].value() == 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void increaseWeight() {
+        if (increaseWeight) {
+            for (IntVar[] path : next) {
+                for (IntVar v : path) {
+                    v.weight++;
+                }
+            }
+            for (IntVar v : used) {
+                v.weight++;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(id() + " : EdgeUsage([");
+        for (int e = 0; e < from.length; e++) {
+            if (e > 0) {
+                result.append(", ");
+            }
+            result.append(from[e] + "-" + to[e] + ":" + used[e]);
+        }
+        result.append("])");
+        return result.toString();
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+import org.jacop.core.Var;
+import org.jacop.fz.FlatzincLoader;
+import org.jacop.search.DepthFirstSearch;
+import org.jacop.search.PrintOutListener;
+import org.jacop.search.SelectChoicePoint;
+
+/**
+ * Solves MiniZinc and FlatZinc models with the FlatZinc parser of JaCoP,
+ * so that a model can be tried with new data without changing the Java
+ * arrays of App.
+ *
+ * A .mzn model is flattened with mzn2fzn once for every combination of
+ * model and data: the .fzn file is kept in a cache directory under the
+ * SHA-256 hash of the flattener command, the model and the data files.
+ * Every load parses the .fzn file into a store of its own, so models
+ * loaded from the same file are searched independently. Every search runs
+ * one level above the root of the store, so the store is unchanged
+ * afterwards and can be searched again.
+ *
+ * Any integer model is accepted, so the MiniZinc versions of the other
+ * labs run the same way.
+ */
+public class FlatZinc {
+
+    /**
+     * Command that flattens a .mzn model with the JaCoP globals; the output
+     * file, the model and the data files are appended
+     */
+    static final String[] FLATTENER = { "mzn2fzn", "-G", "jacop" };
+
+    static final String DEFAULT_CACHE = "build/fzn-cache";
+
+    /**
+     * Model, created by the parser
+     */
+    public final Store store;
+    public final SelectChoicePoint<IntVar> select;
+
+    /**
+     * Variable to minimize, or null for a satisfaction problem
+     */
+    public final IntVar cost;
+
+    /**
+     * Variables marked for output in the model
+     */
+    public final IntVar[] output;
+
+    /**
+     * Search used by the last call to search()
+     */
+    public DepthFirstSearch<IntVar> search;
+
+    /**
+     * Values of output in the last solution found by search()
+     */
+    public int[] solution;
+
+    /**
+     * Metrics of the search, or null if not measured
+     */
+    public SearchMetrics metrics;
+
+    /**
+     * Receives every solution instead of the console, or null
+     */
+    public SolutionSink solutionSink;
+
+    /**
+     * Time limit of the search in seconds, 0 for no limit
+     */
+    public int timeOut = 0;
+
+    @SuppressWarnings("unchecked")
+    FlatZinc(String file) throws IOException {
+        FlatzincLoader loader = new FlatzincLoader(new String[] { file });
+        loader.load();
+
+        // the parser prints its errors and leaves the model unset
+        if (loader.getStore() == null || loader.getSelectChoicePoint() == null) {
+            throw new IOException(file + ": not a valid FlatZinc model");
+        }
+        store = loader.getStore();
+        // the parser selects Var, which are all IntVar in an integer model
+        select = (SelectChoicePoint<IntVar>) (SelectChoicePoint<?>) loader.getSelectChoicePoint();
+
+        Var objective = loader.getCost();
+        if (objective != null && !(objective instanceof IntVar)) {
+            throw new IllegalArgumentException(file + ": only integer objectives are supported");
+        }
+        cost = (IntVar) objective;
+
+        List<IntVar> outputVars = new ArrayList<IntVar>();
+        for (int i = 0; i < store.size(); i++) {
+            Var v = store.vars[i];
+            if (v instanceof IntVar && loader.getTables().isOutput(v)) {
+                outputVars.add((IntVar) v);
+            }
+        }
+        output = outputVars.toArray(new IntVar[outputVars.size()]);
+    }
+
+    /**
+     * Usage: FlatZinc model.mzn [data.dzn ...] | model.fzn [-cache dir]
+     * [-timeout seconds] [-metrics file] [-solutions file]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: FlatZinc model.mzn [data.dzn ...] | model.fzn [-cache dir] "
+                    + "[-timeout seconds] [-metrics file] [-solutions file]");
+            return;
+        }
+
+        int files = 1;
+        while (files < args.length && !args[files].startsWith("-")) {
+            files++;
+        }
+
+        String cache = DEFAULT_CACHE;
+        int timeOut = 0;
+        String metricsFile = null;
+        String solutionFile = null;
+        for (int i = files; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-cache")) {
+                cache = args[i + 1];
+            } else if (args[i].equals("-timeout")) {
+                timeOut = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-metrics")) {
+                metricsFile = args[i + 1];
+            } else if (args[i].equals("-solutions")) {
+                solutionFile = args[i + 1];
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        FlatZinc model = load(args[0], Arrays.copyOfRange(args, 1, files), cache);
+        model.timeOut = timeOut;
+        if (metricsFile != null) {
+            model.metrics = new SearchMetrics();
+            model.metrics.setLogInterval(10000);
+        }
+        if (solutionFile != null) {
+            model.solutionSink = new SolutionSink(new FileWriter(solutionFile), 1024);
+        }
+
+        boolean result = model.search(true);
+
+        if (model.solutionSink != null) {
+            model.solutionSink.close();
+        }
+        if (metricsFile != null) {
+            model.metrics.write(metricsFile);
+        }
+
+        if (result) {
+            System.out.println("\n*** Yes!");
+            for (int i = 0; i < model.output.length; i++) {
+                System.out.println(model.output[i].id() + " = " + model.solution[i]);
+            }
+        } else {
+            System.out.println("NOOOO! ");
+        }
+    }
+
+    /**
+     * Loads a .fzn model, or flattens a .mzn model with its data first
+     *
+     * @param cache directory of the flattened models
+     */
+    public static FlatZinc load(String model, String[] data, String cache) throws IOException,
+            InterruptedException {
+        if (model.endsWith(".mzn")) {
+            return load(flatten(Paths.get(model), data, Paths.get(cache)).toString());
+        }
+        if (data.length > 0) {
+            throw new IllegalArgumentException(model + ": data files need a .mzn model");
+        }
+        return load(model);
+    }
+
+    /**
+     * Parses a .fzn model into a new store
+     *
+     * @throws IOException if the file is missing or cannot be parsed
+     */
+    public static FlatZinc load(String file) throws IOException {
+        if (!Files.exists(Paths.get(file))) {
+            throw new IOException(file + ": no such file");
+        }
+        return new FlatZinc(file);
+    }
+
+    /**
+     * Returns the flattened model from the cache, running the flattener
+     * if this model and data have not been flattened before
+     */
+    static Path flatten(Path model, String[] data, Path cache) throws IOException, InterruptedException {
+        byte[][] parts = new byte[data.length + 2][];
+        parts[0] = String.join(" ", FLATTENER).getBytes("UTF-8");
+        parts[1] = Files.readAllBytes(model);
+        for (int i = 0; i < data.length; i++) {
+            parts[i + 2] = Files.readAllBytes(Paths.get(data[i]));
+        }
+        Path fzn = cache.resolve(hash(parts) + ".fzn");
+        if (Files.exists(fzn)) {
+            return fzn;
+        }
+
+        Files.createDirectories(cache);
+        Path partial = Files.createTempFile(cache, "flatten", ".fzn");
+        List<String> command = new ArrayList<String>(Arrays.asList(FLATTENER));
+        command.add("-o");
+        command.add(partial.toString());
+        command.add(model.toString());
+        command.addAll(Arrays.asList(data));
+
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        if (process.waitFor() != 0) {
+            Files.deleteIfExists(partial);
+            throw new IOException(model + ": " + FLATTENER[0] + " failed with exit code " + process.exitValue());
+        }
+        // a concurrent run may have flattened the same model meanwhile
+        Files.move(partial, fzn, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return fzn;
+    }
+
+    static String hash(byte[]... parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (byte[] part : parts) {
+            // the length keeps the parts apart
+            digest.update(Integer.toString(part.length).getBytes());
+            digest.update((byte) 0);
+            digest.update(part);
+        }
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest()) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Searches for the best solution, or any solution of a satisfaction
+     * problem, and keeps its output values in solution
+     */
+    public boolean search(boolean print) {
+
+        search = new DepthFirstSearch<IntVar>();
+
+        search.setPrintInfo(print);
+        if (solutionSink != null) {
+            search.setSolutionListener(solutionSink.listener(output));
+        } else if (print) {
+            search.setSolutionListener(new PrintOutListener<IntVar>());
+        }
+        if (metrics != null) {
+            metrics.attach(search);
+        }
+        if (timeOut > 0) {
+            search.setTimeOut(timeOut);
+        }
+
+        // The search leaves its solution assigned, so it runs on its own
+        // level, which is removed afterwards
+        store.setLevel(store.level + 1);
+        try {
+            boolean result = cost != null ? search.labeling(store, select, cost) : search.labeling(store, select);
+            if (result) {
+                solution = new int[output.length];
+                for (int i = 0; i < output.length; i++) {
+                    solution[i] = output[i].value();
+                }
+            }
+            return result;
+        } finally {
+            store.removeLevel(store.level);
+            store.setLevel(store.level - 1);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.jacop.constraints.Constraint;
+import org.jacop.core.IntDomain;
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+import org.jacop.core.Var;
+
+/**
+ * Lower bound on the cost of the path from start to one dest, taken by
+ * the successor variables of a Subcircuit.
+ *
+ * Dijkstra is run from start and, backwards, from dest over the arcs still
+ * allowed by the successor domains. The shortest path is a lower bound of
+ * pathCost, and an arc i -> j is removed if the cheapest path through it,
+ * distance to i + cost + distance from j, exceeds the upper bound of
+ * pathCost.
+ */
+public class ShortestPathBound extends Constraint {
+
+    static int idNumber = 1;
+
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * Successor of every node, nodes numbered from 1; a node which is not
+     * on the path is its own successor
+     */
+    final IntVar[] next;
+
+    final int start;
+    final int dest;
+
+    /**
+     * Adjacency in compressed sparse row form, see App
+     */
+    final int[] offset;
+    final int[] adjacent;
+
+    /**
+     * Cost of the step to every adjacent node, the same in both directions
+     * of an edge, so that it serves the backward search too
+     */
+    final int[] stepCost;
+
+    final IntVar pathCost;
+
+    /**
+     * Distances from start and to dest, and the heap of Dijkstra, indexed
+     * by node; allocated once
+     */
+    final int[] fromStart;
+    final int[] toDest;
+    final int[] heap;
+    final int[] heapPosition;
+
+    public ShortestPathBound(IntVar[] next, int start, int dest, int[] offset, int[] adjacent, int[] stepCost,
+            IntVar pathCost) {
+        numberId = idNumber++;
+        numberArgs = next.length + 1;
+
+        this.next = next;
+        this.start = start;
+        this.dest = dest;
+        this.offset = offset;
+        this.adjacent = adjacent;
+        this.stepCost = stepCost;
+        this.pathCost = pathCost;
+
+        fromStart = new int[next.length + 1];
+        toDest = new int[next.length + 1];
+        heap = new int[next.length + 1];
+        heapPosition = new int[next.length + 1];
+    }
+
+    @Override
+    public ArrayList<Var> arguments() {
+        ArrayList<Var> variables = new ArrayList<Var>(next.length + 1);
+        for (IntVar v : next) {
+            variables.add(v);
+        }
+        variables.add(pathCost);
+        return variables;
+    }
+
+    @Override
+    public void consistency(Store store) {
+
+        dijkstra(fromStart, start, true);
+        if (fromStart[dest] == UNREACHABLE) {
+            throw Store.failException;
+        }
+        pathCost.domain.inMin(store.level, pathCost, fromStart[dest]);
+
+        dijkstra(toDest, dest, false);
+
+        // Remove arcs that only belong to paths above the bound
+        int slack = pathCost.max();
+        for (int i = 1; i < next.length + 1; i++) {
+            IntVar var = next[i - 1];
+            if (i == dest || var.singleton()) {
+                continue;
+            }
+            for (int k = offset[i]; k < offset[i + 1]; k++) {
+                int j = adjacent[k];
+                if (j == i || j == start || !var.domain.contains(j)) {
+                    continue;
+                }
+                if (fromStart[i] == UNREACHABLE || toDest[j] == UNREACHABLE
+                        || (long) fromStart[i] + stepCost[k] + toDest[j] > slack) {
+                    var.domain.inComplement(store.level, var, j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the distance of every node from source, or to source if
+     * forward is false, over the arcs allowed by the successor domains
+     */
+    void dijkstra(int[] distance, int source, boolean forward) {
+        Arrays.fill(distance, UNREACHABLE);
+        distance[source] = 0;
+        int size = 0;
+        heap[size] = source;
+        heapPosition[source] = size++;
+
+        while (size > 0) {
+            int node = heap[0];
+            heap[0] = heap[--size];
+            heapPosition[heap[0]] = 0;
+            down(distance, 0, size);
+
+            // the path ends at dest and never enters start again
+            if (forward ? node == dest : node == start) {
+                continue;
+            }
+
+            for (int k = offset[node]; k < offset[node + 1]; k++) {
+                int other = adjacent[k];
+                // forward the arc node -> other, backward other -> node
+                boolean allowed = forward ? next[node - 1].domain.contains(other)
+                        : next[other - 1].domain.contains(node);
+                if (!allowed || other == node) {
+                    continue;
+                }
+                int d = distance[node] + stepCost[k];
+                if (d < distance[other]) {
+                    if (distance[other] == UNREACHABLE) {
+                        heap[size] = other;
+                        heapPosition[other] = size++;
+                    }
+                    distance[other] = d;
+                    up(distance, heapPosition[other]);
+                }
+            }
+        }
+    }
+
+    void up(int[] distance, int position) {
+        int node = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (distance[heap[parent]] <= distance[node]) {
+                break;
+            }
+            heap[position] = heap[parent];
+            heapPosition[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = node;
+        heapPosition[node] = position;
+    }
+
+    void down(int[] distance, int position, int size) {
+        if (size == 0) {
+            return;
+        }
+        int node = heap[position];
+        while (2 * position + 1 < size) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && distance[heap[child + 1]] < distance[heap[child]]) {
+                child++;
+            }
+            if (distance[node] <= distance[heap[child]]) {
+                break;
+            }
+            heap[position] = heap[child];
+            heapPosition[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = node;
+        heapPosition[node] = position;
+    }
+
+    @Override
+    public int getConsistencyPruningEvent(Var var) {
+        if (consistencyPruningEvents != null) {
+            Integer event = consistencyPruningEvents.get(var);
+            if (event != null) {
+                return event;
+            }
+        }
+        return var == pathCost ? IntDomain.BOUND : IntDomain.ANY;
+    }
+
+    @Override
+    public void impose(Store store) {
+        for (IntVar v : next) {
+            v.putModelConstraint(this, getConsistencyPruningEvent(v));
+        }
+        pathCost.putModelConstraint(this, getConsistencyPruningEvent(pathCost));
+        store.addChanged(this);
+        store.countConstraint();
+    }
+
+    @Override
+    public void removeConstraint() {
+        for (IntVar v : next) {
+            v.removeConstraint(this);
+        }
+        pathCost.removeConstraint(this);
+    }
+
+    @Override
+    public boolean satisfied() {
+        // entailed once the path is fixed; Subcircuit and the step costs check it
+        for (IntVar v : next) {
+            if (!v.singleton()) {
+                return false;
+            }
+        }
+        return pathCost.singleton();
+    }
+
+    @Override
+    public void increaseWeight() {
+        if (increaseWeight) {
+            for (IntVar v : next) {
+                v.weight++;
+            }
+            pathCost.weight++;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return id() + " : ShortestPathBound(" + start + " -> " + dest + ", " + Arrays.asList(next) + ", "
+                + pathCost + ")";
+    }
+}
@@ -0,0 +1,26 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the EdgeUsage model with the decomposed IfThen model on small
+ * random graphs, with the graphs and the enumeration of
+ * ShortestPathBoundTest.
+ */
+public class EdgeUsageTest {
+
+    @Test
+    public void sameSolutionsAsDecomposed() {
+        Random random = new Random(2);
+        for (int instance = 0; instance < 100; instance++) {
+            App app = ShortestPathBoundTest.randomGraph(random);
+            int limit = random.nextInt(App.sum(app.cost) / 2 + 1);
+
+            assertEquals(ShortestPathBoundTest.describe(app) + ", cost <= " + limit,
+                    ShortestPathBoundTest.solutions(app, false, true, limit),
+                    ShortestPathBoundTest.solutions(app, false, false, limit));
+        }
+    }
+}
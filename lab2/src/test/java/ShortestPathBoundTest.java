@@ -0,0 +1,107 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.jacop.constraints.XlteqC;
+import org.jacop.core.IntVar;
+import org.jacop.search.DepthFirstSearch;
+import org.jacop.search.IndomainMin;
+import org.jacop.search.Search;
+import org.jacop.search.SelectChoicePoint;
+import org.jacop.search.SimpleMatrixSelect;
+import org.jacop.search.SimpleSolutionListener;
+import org.junit.Test;
+
+/**
+ * Compares the model with ShortestPathBound to the model without it on
+ * small random graphs: the bound must not remove any paths within the
+ * cost limit.
+ */
+public class ShortestPathBoundTest {
+
+    @Test
+    public void sameSolutionsWithoutBound() {
+        Random random = new Random(1);
+        for (int instance = 0; instance < 100; instance++) {
+            App app = randomGraph(random);
+            int limit = random.nextInt(App.sum(app.cost) / 2 + 1);
+
+            assertEquals(describe(app) + ", cost <= " + limit, solutions(app, false, false, limit),
+                    solutions(app, true, false, limit));
+        }
+    }
+
+    /**
+     * Returns a connected graph with 3 to 6 nodes, start 1, one or two
+     * destinations and costs from 1 to 9
+     */
+    static App randomGraph(Random random) {
+        int n = 3 + random.nextInt(4);
+        List<int[]> edges = new ArrayList<int[]>();
+        for (int a = 1; a <= n; a++) {
+            for (int b = a + 1; b <= n; b++) {
+                // a path through all nodes keeps the graph connected
+                if (b == a + 1 || random.nextInt(3) == 0) {
+                    edges.add(new int[] { a, b });
+                }
+            }
+        }
+        int[] from = new int[edges.size()];
+        int[] to = new int[edges.size()];
+        int[] cost = new int[edges.size()];
+        for (int e = 0; e < from.length; e++) {
+            from[e] = edges.get(e)[0];
+            to[e] = edges.get(e)[1];
+            cost[e] = 1 + random.nextInt(9);
+        }
+        int first = 2 + random.nextInt(n - 1);
+        int second = 2 + random.nextInt(n - 1);
+        int[] dest = first == second ? new int[] { first } : new int[] { first, second };
+        return new App(n, 1, dest, from, to, cost);
+    }
+
+    static String describe(App app) {
+        return "nodes " + app.graph_size + ", dest " + Arrays.toString(app.dest) + ", from "
+                + Arrays.toString(app.from) + ", to " + Arrays.toString(app.to) + ", cost " + Arrays.toString(app.cost);
+    }
+
+    /**
+     * Returns the successors of every path in every solution with a total
+     * cost within the limit, and the least total cost of the solution
+     */
+    static List<String> solutions(App app, boolean shortestPathBound, boolean decomposed, int limit) {
+        app.shortestPathBound = shortestPathBound;
+        app.decomposed = decomposed;
+        app.buildModel();
+        app.store.impose(new XlteqC(app.totalCost, limit));
+
+        List<String> found = new ArrayList<String>();
+        DepthFirstSearch<IntVar> search = new DepthFirstSearch<IntVar>();
+        search.setPrintInfo(false);
+        search.setSolutionListener(new SimpleSolutionListener<IntVar>() {
+
+            @Override
+            public boolean executeAfterSolution(Search<IntVar> s, SelectChoicePoint<IntVar> select) {
+                boolean result = super.executeAfterSolution(s, select);
+                StringBuilder solution = new StringBuilder();
+                for (IntVar[] path : app.vars) {
+                    for (IntVar v : path) {
+                        solution.append(v.value()).append(' ');
+                    }
+                }
+                // the decomposed model leaves the cost of unused edges open
+                found.add(solution.append(app.totalCost.min()).toString());
+                return result;
+            }
+        });
+        search.getSolutionListener().searchAll(true);
+        search.getSolutionListener().recordSolutions(false);
+        search.labeling(app.store, new SimpleMatrixSelect<IntVar>(app.vars, null, new IndomainMin<IntVar>()));
+
+        found.sort(null);
+        return found;
+    }
+}
@@ -0,0 +1,116 @@
+package bench;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures model construction, time to the first ruler and time to prove
+ * the optimal ruler for several numbers of marks, with the
+ * DistinctDifferences constraint or the decomposition into difference
+ * variables, with right branches on store levels and Not constraints
+ * of their own or in trail mode, and with decisions imposed as
+ * constraints or applied to the domains.
+ *
+ * Rulers with 11 to 13 marks take minutes to prove optimal; they are run
+ * once each with -bm ss -p noMarks=11,12,13.
+ *
+ * JMH does not accept benchmarks in the default package and Golomb lives
+ * there, so the model is reached through reflection. The reflective calls
+ * are resolved once per trial and are negligible next to the search.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GolombBenchmark {
+
+	@Param({ "7", "8", "9", "10" })
+	int noMarks;
+
+	@Param({ "global", "decomposed" })
+	String differences;
+
+	@Param({ "store", "trail" })
+	String backtracking;
+
+	@Param({ "constraint", "domain" })
+	String decisions;
+
+	Class<?> golomb;
+
+	Field marks;
+
+	Field decomposed;
+
+	Field trail;
+
+	Field domainDecisions;
+
+	Method buildModel;
+
+	Method search;
+
+	/**
+	 * Model built before every invocation of a search benchmark.
+	 */
+	Object model;
+
+	@Setup(Level.Trial)
+	public void resolve() throws ReflectiveOperationException {
+		golomb = Class.forName("Golomb");
+		marks = golomb.getField("noMarks");
+		decomposed = golomb.getField("decomposed");
+		trail = golomb.getField("trail");
+		domainDecisions = golomb.getField("decisions");
+		buildModel = golomb.getMethod("buildModel");
+		search = golomb.getMethod("search", boolean.class, boolean.class);
+	}
+
+	@Setup(Level.Invocation)
+	public void build() throws ReflectiveOperationException {
+		model = newModel();
+		buildModel.invoke(model);
+	}
+
+	Object newModel() throws ReflectiveOperationException {
+		Object m = golomb.getDeclaredConstructor().newInstance();
+		marks.setInt(m, noMarks);
+		decomposed.setBoolean(m, differences.equals("decomposed"));
+		trail.setBoolean(m, backtracking.equals("trail"));
+		domainDecisions.setBoolean(m, decisions.equals("domain"));
+		return m;
+	}
+
+	@Benchmark
+	public Object construction() throws ReflectiveOperationException {
+		Object m = newModel();
+		buildModel.invoke(m);
+		return m;
+	}
+
+	@Benchmark
+	public Object firstSolution() throws ReflectiveOperationException {
+		return search.invoke(model, false, false);
+	}
+
+	@Benchmark
+	public Object optimal() throws ReflectiveOperationException {
+		return search.invoke(model, true, false);
+	}
+}
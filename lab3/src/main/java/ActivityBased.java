@@ -0,0 +1,76 @@
+import org.jacop.core.IntVar;
+
+/**
+ * Activity-based variable selection. The activity of a variable grows
+ * every time propagation reduces its domain and decays at every node, so
+ * recent activity counts most. Picks the variable with the highest
+ * activity per domain value.
+ */
+public class ActivityBased implements VariableSelector {
+
+	/**
+	 * Activities are multiplied by this factor at every node.
+	 */
+	static final double DECAY = 0.999;
+
+	/**
+	 * Activities are rescaled when the increment exceeds this value.
+	 */
+	static final double RESCALE = 1e100;
+
+	/**
+	 * Activity of every variable, indexed by its position in the array
+	 * being labeled.
+	 */
+	double[] activity = new double[0];
+
+	/**
+	 * Domain sizes recorded before propagation.
+	 */
+	int[] sizes = new int[0];
+
+	/**
+	 * Value added to the activity of a reduced variable. It grows instead
+	 * of decaying all activities at every node.
+	 */
+	double increment = 1.0;
+
+	public int select(SparseVariableSet v) {
+		double maxScore = -1.0;
+		int position = 0;
+		for (int i = 0; i < v.size(); i++) {
+			IntVar var = v.get(i);
+			if (var.singleton())
+				return i;
+			double score = activity[v.index(i)] / var.getSize();
+			if (score > maxScore) {
+				maxScore = score;
+				position = i;
+			}
+		}
+		return position;
+	}
+
+	public void beforePropagation(SparseVariableSet v) {
+		if (sizes.length != v.vars.length) {
+			sizes = new int[v.vars.length];
+			activity = new double[v.vars.length];
+		}
+		for (int i = 0; i < v.size(); i++)
+			sizes[v.index(i)] = v.get(i).getSize();
+	}
+
+	public void afterPropagation(SparseVariableSet v, boolean consistent) {
+		if (consistent)
+			for (int i = 0; i < v.size(); i++)
+				if (v.get(i).getSize() < sizes[v.index(i)])
+					activity[v.index(i)] += increment;
+
+		increment /= DECAY;
+		if (increment > RESCALE) {
+			for (int i = 0; i < activity.length; i++)
+				activity[i] /= RESCALE;
+			increment /= RESCALE;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jacop.core.IntDomain;
+import org.jacop.core.IntVar;
+
+/**
+ * Limits the discrepancies of a SimpleDFS, the right branches it takes.
+ * Limited discrepancy search explores the paths with at most k
+ * discrepancies, depth-bounded discrepancy search the paths with
+ * discrepancies above depth k only. Run iteratively, k starts at 0 and
+ * grows by one per run until a run is not cut by the limit, which
+ * completes the search, or the time limit runs out. The best cost is kept
+ * between runs, so an early mistake of the heuristic is undone after a
+ * few runs instead of after the whole subtree below it.
+ *
+ * Every run explores the paths of the runs before again. Walsh's DDS
+ * takes only the right branch at depth k - 1 instead, but that misses
+ * solutions once the variable ordering or the cost bound changes the
+ * tree from one run to the next.
+ */
+public class DiscrepancySearch {
+
+	/**
+	 * Ways to limit the discrepancies of a path.
+	 */
+	public enum Kind {
+		/** at most k discrepancies */
+		LDS,
+		/** discrepancies above depth k only */
+		DDS
+	}
+
+	final SimpleDFS search;
+
+	final Kind kind;
+
+	/**
+	 * Milliseconds allowed for all runs together; 0 for no limit.
+	 */
+	long timeLimit = 0;
+
+	/**
+	 * Number of runs done so far.
+	 */
+	int iterations = 0;
+
+	/**
+	 * True if the last run was neither cut by the limit nor stopped.
+	 */
+	boolean complete = false;
+
+	/**
+	 * Set when the time limit has run out. SimpleDFS forgets a stop that
+	 * comes between two runs, this flag does not.
+	 */
+	volatile boolean timeUp = false;
+
+	boolean trace = false;
+
+	public DiscrepancySearch(SimpleDFS search, Kind kind) {
+		this.search = search;
+		this.kind = kind;
+	}
+
+	public void setTimeLimit(long milliseconds) {
+		timeLimit = milliseconds;
+	}
+
+	/**
+	 * Labels the variables with at most the given number of discrepancies,
+	 * or depth of the last discrepancy for DDS, in one run.
+	 *
+	 * @return the result of the run of SimpleDFS.
+	 */
+	public boolean label(IntVar[] vars, int limit) {
+
+		search.discrepancies = kind;
+		search.discrepancyLimit = limit;
+
+		boolean result = search.label(vars);
+		iterations++;
+		complete = !search.discrepancyLimitReached && !search.interrupted;
+
+		search.discrepancies = null;
+		return result;
+	}
+
+	/**
+	 * Labels the variables with discrepancy limits 0, 1, 2, ... until a run
+	 * is not cut by its limit or the time limit runs out.
+	 *
+	 * @return true if a solution was found.
+	 */
+	public boolean label(IntVar[] vars) {
+
+		ScheduledExecutorService timer = null;
+		timeUp = false;
+		if (timeLimit > 0) {
+			timer = Executors.newSingleThreadScheduledExecutor();
+			timer.schedule(() -> {
+				timeUp = true;
+				search.stop();
+			}, timeLimit, TimeUnit.MILLISECONDS);
+		}
+
+		try {
+			for (int limit = 0;; limit++) {
+				boolean result = label(vars, limit);
+
+				if (trace)
+					System.out.println(kind + " limit " + limit + ": " + (search.costVariable != null
+							&& search.costValue != IntDomain.MaxInt ? "cost " + search.costValue : "no cost")
+							+ ", nodes " + search.searchNodeCount);
+
+				if (result && search.costVariable == null)
+					return true;
+				if (complete || search.interrupted || timeUp)
+					return search.costVariable != null && search.costValue != IntDomain.MaxInt;
+			}
+		} finally {
+			if (timer != null)
+				timer.shutdownNow();
+		}
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Returns true if the last run explored the whole search tree, so its
+	 * best solution is optimal.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+}
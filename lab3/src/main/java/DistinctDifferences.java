@@ -0,0 +1,477 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.jacop.constraints.Constraint;
+import org.jacop.core.IntDomain;
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+import org.jacop.core.Var;
+
+/**
+ * Requires all differences between the increasing marks of a ruler to be
+ * different, without a variable for every difference.
+ *
+ * The differences between the marks that are fixed are kept in a bitset,
+ * together with a stack of the fixed marks that is unwound when the store
+ * removes a level. When marks become fixed, their differences are added,
+ * a repeated difference fails, and every mark that is not fixed loses the
+ * values at a used difference from a fixed mark; only the pairs of a mark
+ * and a difference that are new are looked at.
+ *
+ * The difference of every pair of marks is bounded like the difference
+ * variables of the decomposition: marks i &lt; j are at least L(j - i)
+ * apart and at most L(n - 1 - j + i) short of the last mark, with
+ * L(k) = k(k + 1) / 2 the shortest ruler with k + 1 marks. The bounds skip
+ * used differences, are made bounds consistent like Alldiff on the
+ * difference variables, and bound the marks in turn.
+ */
+public class DistinctDifferences extends Constraint {
+
+	static int idNumber = 1;
+
+	/**
+	 * Marks, increasing; the first is the start of the ruler and the last
+	 * its length.
+	 */
+	final IntVar[] marks;
+
+	final int n;
+
+	/**
+	 * Shortest length of a ruler with k + 1 marks, by k.
+	 */
+	final int[] shortest;
+
+	/**
+	 * Used differences, bit d for difference d.
+	 */
+	final long[] used;
+
+	/**
+	 * Used differences in the order they were added.
+	 */
+	final int[] differences;
+	int differencesSize = 0;
+
+	/**
+	 * Fixed marks in the order they were added, with their value, the level
+	 * of the store and the number of differences before them.
+	 */
+	final int[] fixedMark;
+	final int[] fixedValue;
+	final int[] fixedLevel;
+	final int[] fixedDifferences;
+	int fixedSize = 0;
+
+	final boolean[] isFixed;
+
+	/**
+	 * Marks i &lt; j of every pair, and the bounds of their difference.
+	 */
+	final int pairs;
+	final int[] first;
+	final int[] second;
+	final int[] low;
+	final int[] high;
+
+	/**
+	 * Pairs sorted by the low end and by the high end of their difference,
+	 * and the rank of both ends among the bounds.
+	 */
+	final int[] byLow;
+	final int[] byHigh;
+	final int[] lowRank;
+	final int[] highRank;
+
+	/**
+	 * Distinct ends of the differences, and the trees of the bounds
+	 * consistency algorithm over them.
+	 */
+	final int[] bounds;
+	final int[] tree;
+	final int[] slack;
+	final int[] hall;
+
+	/**
+	 * @param marks marks of the ruler, increasing.
+	 */
+	public DistinctDifferences(IntVar[] marks) {
+		numberId = idNumber++;
+		n = marks.length;
+		numberArgs = n;
+
+		this.marks = marks;
+
+		shortest = new int[n];
+		for (int k = 0; k < n; k++)
+			shortest[k] = k * (k + 1) / 2;
+
+		int longest = 0;
+		for (IntVar v : marks)
+			longest = Math.max(longest, v.max());
+		used = new long[longest / 64 + 1];
+		differences = new int[n * (n - 1) / 2];
+
+		fixedMark = new int[n];
+		fixedValue = new int[n];
+		fixedLevel = new int[n];
+		fixedDifferences = new int[n];
+		isFixed = new boolean[n];
+
+		pairs = n * (n - 1) / 2;
+		first = new int[pairs];
+		second = new int[pairs];
+		int p = 0;
+		for (int j = 1; j < n; j++)
+			for (int i = 0; i < j; i++) {
+				first[p] = i;
+				second[p] = j;
+				p++;
+			}
+		low = new int[pairs];
+		high = new int[pairs];
+		byLow = new int[pairs];
+		byHigh = new int[pairs];
+		for (p = 0; p < pairs; p++)
+			byLow[p] = byHigh[p] = p;
+		lowRank = new int[pairs];
+		highRank = new int[pairs];
+		bounds = new int[2 * pairs + 2];
+		tree = new int[2 * pairs + 2];
+		slack = new int[2 * pairs + 2];
+		hall = new int[2 * pairs + 2];
+	}
+
+	@Override
+	public ArrayList<Var> arguments() {
+		return new ArrayList<Var>(Arrays.asList(marks));
+	}
+
+	@Override
+	public void consistency(Store store) {
+		do {
+			store.propagationHasOccurred = false;
+
+			int oldFixed = fixedSize;
+			int oldDifferences = differencesSize;
+			for (int i = 0; i < n; i++)
+				if (!isFixed[i] && marks[i].singleton())
+					fix(store.level, i);
+
+			if (fixedSize > oldFixed)
+				prune(store, oldFixed, oldDifferences);
+
+			bound(store);
+		} while (store.propagationHasOccurred);
+	}
+
+	/**
+	 * Adds the differences of a mark that became fixed, and fails if one of
+	 * them is used already.
+	 */
+	void fix(int level, int mark) {
+		int value = marks[mark].value();
+		int start = differencesSize;
+		for (int e = 0; e < fixedSize; e++) {
+			int d = Math.abs(value - fixedValue[e]);
+			if (isUsed(d)) {
+				// the failure removes the level, which only knows about
+				// complete marks
+				while (differencesSize > start)
+					clear(differences[--differencesSize]);
+				throw Store.failException;
+			}
+			used[d >> 6] |= 1L << d;
+			differences[differencesSize++] = d;
+		}
+		fixedMark[fixedSize] = mark;
+		fixedValue[fixedSize] = value;
+		fixedLevel[fixedSize] = level;
+		fixedDifferences[fixedSize] = start;
+		fixedSize++;
+		isFixed[mark] = true;
+	}
+
+	void clear(int d) {
+		used[d >> 6] &= ~(1L << d);
+	}
+
+	/**
+	 * Removes fixed +/- used from every mark that is not fixed, for the new
+	 * fixed marks with all differences and the old ones with the new
+	 * differences.
+	 */
+	void prune(Store store, int oldFixed, int oldDifferences) {
+		for (int i = 0; i < n; i++) {
+			if (isFixed[i])
+				continue;
+			IntVar v = marks[i];
+			for (int e = 0; e < fixedSize; e++) {
+				int f = fixedValue[e];
+				for (int t = e < oldFixed ? oldDifferences : 0; t < differencesSize; t++) {
+					remove(store, v, f + differences[t]);
+					remove(store, v, f - differences[t]);
+				}
+			}
+		}
+	}
+
+	void remove(Store store, IntVar v, int value) {
+		if (value >= v.min() && value <= v.max() && v.domain.contains(value))
+			v.domain.inComplement(store.level, v, value);
+	}
+
+	/**
+	 * Bounds the difference of every pair of marks by the marks, by the
+	 * shortest rulers between them and outside them and past used
+	 * differences, makes the differences bounds consistent like Alldiff,
+	 * and bounds the marks by them.
+	 */
+	void bound(Store store) {
+		if (pairs == 0)
+			return;
+		IntVar last = marks[n - 1];
+		for (int p = 0; p < pairs; p++) {
+			int i = first[p];
+			int j = second[p];
+			IntVar a = marks[i];
+			IntVar b = marks[j];
+			if (isFixed[i] && isFixed[j]) {
+				low[p] = high[p] = b.value() - a.value();
+				continue;
+			}
+			int l = Math.max(b.min() - a.max(), shortest[j - i]);
+			int h = Math.min(b.max() - a.min(), last.max() - shortest[n - 1 - j + i]);
+			while (l <= h && isUsed(l))
+				l++;
+			while (h >= l && isUsed(h))
+				h--;
+			if (l > h)
+				throw Store.failException;
+			low[p] = l;
+			high[p] = h;
+		}
+
+		allDifferent();
+
+		for (int p = 0; p < pairs; p++) {
+			IntVar a = marks[first[p]];
+			IntVar b = marks[second[p]];
+			int l = low[p];
+			int h = high[p];
+
+			if (b.min() < a.min() + l)
+				b.domain.inMin(store.level, b, a.min() + l);
+			if (a.max() > b.max() - l)
+				a.domain.inMax(store.level, a, b.max() - l);
+			if (b.max() > a.max() + h)
+				b.domain.inMax(store.level, b, a.max() + h);
+			if (a.min() < b.min() - h)
+				a.domain.inMin(store.level, a, b.min() - h);
+
+			// the rest of the ruler is at least the shortest ruler with
+			// the other marks
+			int outside = shortest[n - 1 - second[p] + first[p]];
+			if (last.min() < l + outside)
+				last.domain.inMin(store.level, last, l + outside);
+		}
+	}
+
+	/**
+	 * Makes the differences bounds consistent, with the algorithm of
+	 * Lopez-Ortiz, Quimper, Tromp and van Beek: the ends of the intervals
+	 * are ranked, and Hall intervals are found in one sweep per direction
+	 * with path-compressed trees over the ranks.
+	 */
+	void allDifferent() {
+		sort(byLow, low);
+		sort(byHigh, high);
+
+		// the distinct low ends and high ends + 1, with sentinels
+		int last = low[byLow[0]] - 2;
+		int nb = 0;
+		bounds[0] = last;
+		for (int i = 0, j = 0;;) {
+			if (i < pairs && low[byLow[i]] <= high[byHigh[j]] + 1) {
+				int min = low[byLow[i]];
+				if (min != last)
+					bounds[++nb] = last = min;
+				lowRank[byLow[i]] = nb;
+				i++;
+			} else {
+				int max = high[byHigh[j]] + 1;
+				if (max != last)
+					bounds[++nb] = last = max;
+				highRank[byHigh[j]] = nb;
+				if (++j == pairs)
+					break;
+			}
+		}
+		bounds[nb + 1] = bounds[nb] + 2;
+
+		// low ends
+		for (int i = 1; i <= nb + 1; i++) {
+			tree[i] = hall[i] = i - 1;
+			slack[i] = bounds[i] - bounds[i - 1];
+		}
+		for (int i = 0; i < pairs; i++) {
+			int p = byHigh[i];
+			int x = lowRank[p];
+			int y = highRank[p];
+			int z = pathMax(tree, x + 1);
+			int j = tree[z];
+			if (--slack[z] == 0) {
+				tree[z] = z + 1;
+				z = pathMax(tree, tree[z]);
+				tree[z] = j;
+			}
+			pathSet(tree, x + 1, z, z);
+			if (slack[z] < bounds[z] - bounds[y])
+				throw Store.failException;
+			if (hall[x] > x) {
+				int w = pathMax(hall, hall[x]);
+				low[p] = bounds[w];
+				pathSet(hall, x, w, w);
+			}
+			if (slack[z] == bounds[z] - bounds[y]) {
+				pathSet(hall, hall[y], j - 1, y);
+				hall[y] = j - 1;
+			}
+		}
+
+		// high ends; the low ends changed, but not their ranks
+		for (int i = 0; i <= nb; i++) {
+			tree[i] = hall[i] = i + 1;
+			slack[i] = bounds[i + 1] - bounds[i];
+		}
+		for (int i = pairs - 1; i >= 0; i--) {
+			int p = byLow[i];
+			int x = highRank[p];
+			int y = lowRank[p];
+			int z = pathMin(tree, x - 1);
+			int j = tree[z];
+			if (--slack[z] == 0) {
+				tree[z] = z - 1;
+				z = pathMin(tree, tree[z]);
+				tree[z] = j;
+			}
+			pathSet(tree, x - 1, z, z);
+			if (slack[z] < bounds[y] - bounds[z])
+				throw Store.failException;
+			if (hall[x] < x) {
+				int w = pathMin(hall, hall[x]);
+				high[p] = bounds[w] - 1;
+				pathSet(hall, x, w, w);
+			}
+			if (slack[z] == bounds[y] - bounds[z]) {
+				pathSet(hall, hall[y], j + 1, y);
+				hall[y] = j + 1;
+			}
+		}
+	}
+
+	/**
+	 * Sorts the pairs by a key with insertion sort; the bounds change
+	 * little between calls, so the order is nearly sorted already.
+	 */
+	void sort(int[] order, int[] key) {
+		for (int k = 1; k < pairs; k++) {
+			int q = order[k];
+			int v = key[q];
+			int m = k - 1;
+			while (m >= 0 && key[order[m]] > v) {
+				order[m + 1] = order[m];
+				m--;
+			}
+			order[m + 1] = q;
+		}
+	}
+
+	static void pathSet(int[] t, int start, int end, int to) {
+		int k;
+		int l = start;
+		while ((k = l) != end) {
+			l = t[k];
+			t[k] = to;
+		}
+	}
+
+	static int pathMin(int[] t, int i) {
+		while (t[i] < i)
+			i = t[i];
+		return i;
+	}
+
+	static int pathMax(int[] t, int i) {
+		while (t[i] > i)
+			i = t[i];
+		return i;
+	}
+
+	boolean isUsed(int d) {
+		return d >> 6 < used.length && (used[d >> 6] & 1L << d) != 0;
+	}
+
+	@Override
+	public void removeLevel(int level) {
+		while (fixedSize > 0 && fixedLevel[fixedSize - 1] >= level) {
+			fixedSize--;
+			while (differencesSize > fixedDifferences[fixedSize])
+				clear(differences[--differencesSize]);
+			isFixed[fixedMark[fixedSize]] = false;
+		}
+	}
+
+	@Override
+	public int getConsistencyPruningEvent(Var var) {
+		if (consistencyPruningEvents != null) {
+			Integer event = consistencyPruningEvents.get(var);
+			if (event != null)
+				return event;
+		}
+		return IntDomain.BOUND;
+	}
+
+	@Override
+	public void impose(Store store) {
+		for (IntVar v : marks)
+			v.putModelConstraint(this, getConsistencyPruningEvent(v));
+		store.registerRemoveLevelListener(this);
+		store.addChanged(this);
+		store.countConstraint();
+	}
+
+	@Override
+	public void removeConstraint() {
+		for (IntVar v : marks)
+			v.removeConstraint(this);
+	}
+
+	@Override
+	public boolean satisfied() {
+		boolean[] seen = new boolean[used.length * 64];
+		for (int i = 0; i < n; i++) {
+			if (!marks[i].singleton())
+				return false;
+			for (int j = 0; j < i; j++) {
+				int d = Math.abs(marks[i].value() - marks[j].value());
+				if (seen[d])
+					return false;
+				seen[d] = true;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void increaseWeight() {
+		if (increaseWeight)
+			for (IntVar v : marks)
+				v.weight++;
+	}
+
+	@Override
+	public String toString() {
+		return id() + " : DistinctDifferences(" + Arrays.asList(marks) + ")";
+	}
+}
@@ -0,0 +1,32 @@
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+
+/**
+ * dom/wdeg variable selection. Picks the variable with the smallest ratio
+ * of domain size to weighted degree. The store increases the weight of
+ * the variables of a constraint every time the constraint fails during
+ * consistency, so variables involved in many failures are labeled first.
+ */
+public class DomWDeg implements VariableSelector {
+
+	public DomWDeg(Store store) {
+		// make the store count failures of constraints on their variables
+		store.variableWeightManagement = true;
+	}
+
+	public int select(SparseVariableSet v) {
+		double minRatio = Double.MAX_VALUE;
+		int position = 0;
+		for (int i = 0; i < v.size(); i++) {
+			IntVar var = v.get(i);
+			if (var.singleton())
+				return i;
+			double ratio = (double) var.getSize() / (var.weight + 1);
+			if (ratio < minRatio) {
+				minRatio = ratio;
+				position = i;
+			}
+		}
+		return position;
+	}
+}
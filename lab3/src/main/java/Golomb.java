@@ -29,7 +29,20 @@
  *
  */
 
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jacop.constraints.Alldiff;
 import org.jacop.constraints.XeqC;
@@ -37,6 +50,8 @@ import org.jacop.constraints.XltY;
 import org.jacop.constraints.XlteqC;
 import org.jacop.constraints.XplusClteqZ;
 import org.jacop.constraints.XplusYeqZ;
+import org.jacop.constraints.XplusYlteqZ;
+import org.jacop.core.IntDomain;
 import org.jacop.core.IntVar;
 import org.jacop.core.Store;
 import org.jacop.search.DepthFirstSearch;
@@ -81,31 +96,540 @@ public class Golomb {
 	public int bound = -1;
 
 	/**
-	 * It contains all differences between all possible pairs of marks.
+	 * It contains all differences between all possible pairs of marks;
+	 * empty unless the model is decomposed.
 	 */
 	public ArrayList<IntVar> subs = new ArrayList<IntVar>();
 
+	/**
+	 * It specifies if the differences are variables constrained by
+	 * XplusYeqZ, XplusClteqZ and Alldiff instead of one
+	 * DistinctDifferences constraint on the marks.
+	 */
+	public boolean decomposed = false;
+
+	/**
+	 * It specifies if the search runs right branches without a store
+	 * level and a Not constraint of their own.
+	 */
+	public boolean trail = false;
+
+	/**
+	 * It specifies if the search applies decisions to the domains of the
+	 * marks instead of imposing constraints.
+	 */
+	public boolean decisions = false;
+
+	/**
+	 * It specifies the variable selection heuristic, one of HEURISTICS.
+	 */
+	public String heuristic = "largest";
+
+	/**
+	 * It specifies if the cost is minimized by dichotomic search.
+	 */
+	public boolean dichotomic = false;
+
+	/**
+	 * Names of the available variable selection heuristics.
+	 */
+	static final String[] HEURISTICS = { "smallest", "largest", "input", "domwdeg", "activity" };
+
+	/**
+	 * It contains the marks of the ruler.
+	 */
+	public IntVar numbers[];
+
+	/**
+	 * It specifies the cost variable, the last mark.
+	 */
+	public IntVar cost;
+
+	/**
+	 * It contains the search used by the last call to search().
+	 */
+	public SimpleDFS search;
+
+	/**
+	 * It specifies the metrics of search(); null if not measured.
+	 */
+	public SearchMetrics metrics = null;
+
+	/**
+	 * It specifies the file the metrics of model() are written to, JSON or CSV.
+	 */
+	public String metricsFile = null;
+
+	/**
+	 * Milliseconds between two progress lines when the search is measured.
+	 */
+	static final long METRICS_LOG_INTERVAL = 10000;
+
+	/**
+	 * It specifies the sink receiving the marks of every solution of
+	 * search(); null if solutions are only printed.
+	 */
+	public SolutionSink solutionSink = null;
+
+	/**
+	 * Number of solutions that can wait to be written by the sink.
+	 */
+	static final int SINK_CAPACITY = 1024;
+
+	/**
+	 * Lengths of the optimal rulers, indexed by the number of marks.
+	 */
+	static final int[] OPTIMAL = { 0, 0, 1, 3, 6, 11, 17, 25, 34, 44, 55, 72, 85, 106, 127, 151, 177, 199, 216,
+			246, 283, 333, 356, 372, 425, 480, 492, 553, 585 };
+
+	/**
+	 * Largest number of marks solved before a batch to warm up the JIT.
+	 */
+	static final int WARMUP_MARKS = 9;
+
+	/**
+	 * Number of times the warm up instances are solved before a batch.
+	 */
+	static final int WARMUP_ROUNDS = 3;
+
 	/**
 	 * It executes the program which computes the optimal Golomb ruler. 
 	 * 
 	 * @param args the first argument specifies the number of marks, the second argument specifies the upper bound of the optimal solution.
+	 * "-portfolio threads" runs a parallel portfolio of searches instead,
+	 * "-parallel threads depth" splits the search tree among threads,
+	 * "-restarts luby|geometric runs" compares runtimes with and without restarts.
+	 * "-heuristic name" in front of the arguments selects one of HEURISTICS,
+	 * "-dichotomic" minimizes the cost by dichotomic search.
+	 * "-metrics file" in front of the arguments writes the search metrics
+	 * to a .json or .csv file and prints progress to stderr,
+	 * "-solutions file" in front of the arguments writes every solution
+	 * to a file on a background thread instead of printing it,
+	 * "-differences decomposed" in front of the arguments uses the
+	 * decomposed differences instead of DistinctDifferences,
+	 * "-backtracking trail" in front of the arguments runs right branches
+	 * without a store level and a Not constraint of their own,
+	 * "-decisions domain" in front of the arguments applies decisions to
+	 * the domains of the marks instead of imposing constraints,
+	 * "-marks n" in front of the arguments sets the number of marks of
+	 * the other commands.
+	 * "-discrepancy lds|dds seconds" minimizes the length by limited or
+	 * depth-bounded discrepancy search with growing limits for at most
+	 * seconds,
+	 * "-batch from to seconds file" solves the rulers with from to to marks
+	 * within the known optimal length, each for at most seconds, and
+	 * writes the time and nodes of every ruler to a CSV file.
 	 */
-	public static void main(String args[]) {
+	public static void main(String args[]) throws InterruptedException, IOException {
 
 		Golomb example = new Golomb();
 
-		example.model();
+		while (args.length >= 2 && (args[0].equals("-heuristic") || args[0].equals("-metrics")
+				|| args[0].equals("-solutions") || args[0].equals("-differences")
+				|| args[0].equals("-backtracking") || args[0].equals("-decisions") || args[0].equals("-marks"))) {
+			if (args[0].equals("-heuristic"))
+				example.heuristic = args[1];
+			else if (args[0].equals("-metrics"))
+				example.metricsFile = args[1];
+			else if (args[0].equals("-differences"))
+				example.decomposed = args[1].equals("decomposed");
+			else if (args[0].equals("-backtracking"))
+				example.trail = args[1].equals("trail");
+			else if (args[0].equals("-decisions"))
+				example.decisions = args[1].equals("domain");
+			else if (args[0].equals("-marks"))
+				example.noMarks = Integer.parseInt(args[1]);
+			else
+				example.solutionSink = new SolutionSink(new FileWriter(args[1]), SINK_CAPACITY);
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+
+		if (args.length == 2 && args[0].equals("-portfolio"))
+			example.portfolio(Integer.parseInt(args[1]));
+		else if (args.length == 3 && args[0].equals("-parallel"))
+			example.parallel(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+		else if (args.length == 1 && args[0].equals("-dichotomic")) {
+			example.dichotomic = true;
+			example.model();
+		} else if (args.length == 3 && args[0].equals("-restarts"))
+			example.compareRestarts(RestartSearch.Schedule.valueOf(args[1].toUpperCase()),
+					Integer.parseInt(args[2]));
+		else if (args.length == 3 && args[0].equals("-discrepancy"))
+			example.discrepancy(DiscrepancySearch.Kind.valueOf(args[1].toUpperCase()),
+					Long.parseLong(args[2]) * 1000);
+		else if (args.length == 5 && args[0].equals("-batch"))
+			example.batch(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[3]) * 1000,
+					args[4]);
+		else {
+			if (args.length >= 1)
+				example.noMarks = Integer.parseInt(args[0]);
+			if (args.length >= 2)
+				example.bound = Integer.parseInt(args[1]);
+			example.model();
+		}
 
 	}
 
-	public void model() {
+	public void model() throws IOException {
 
 		System.out.println("Program to solve Golomb mark problem - length " + noMarks);
 
+		buildModel();
+
+		if (metricsFile != null) {
+			metrics = new SearchMetrics();
+			metrics.setLogInterval(METRICS_LOG_INTERVAL);
+		}
+
+		long start = System.currentTimeMillis();
+
+		boolean result = search(true, solutionSink == null);
+		if (solutionSink != null)
+			solutionSink.close();
+
+		System.out.println(result);
+		System.out.println("Search time: " + (System.currentTimeMillis() - start) + " ms, nodes "
+				+ search.searchNodeCount + ", consistency calls " + store.numberConsistencyCalls);
+		System.out.println("Cost bound imposed " + search.boundPosts + " times, skipped at "
+				+ search.boundPostsSaved + " nodes");
+		System.out.println("Store levels removed " + search.removeLevelCount + " times, Not constraints imposed "
+				+ search.notCount + " times");
+
+		if (metrics != null)
+			metrics.write(metricsFile);
+
+	}
+
+	/**
+	 * It searches the model created by buildModel().
+	 * 
+	 * @param optimize true to search for the optimal ruler, false to stop at the first ruler.
+	 * @param print true to print every solution found.
+	 */
+	public boolean search(boolean optimize, boolean print) {
+
+		search = new SimpleDFS(store);
+		search.setVariablesToReport(numbers);
+		search.setCostVariable(optimize ? cost : null);
+		search.setVariableSelector(selector(heuristic));
+		search.setTrail(trail);
+		search.setDecisions(decisions);
+		search.setPrintSolutions(print);
+		search.setMetrics(metrics);
+		search.setSolutionSink(solutionSink);
+
+		if (dichotomic && optimize)
+			return search.labelDichotomic(numbers);
+		return search.label(numbers);
+	}
+
+	/**
+	 * It runs several searches in parallel, each on its own copy of the
+	 * model and with a different combination of variable selection and
+	 * value split. The searches share the cost of the best solution so
+	 * far; the first search to finish has proven optimality and stops
+	 * the others.
+	 * 
+	 * @param threads number of searches, at most one per configuration.
+	 */
+	public void portfolio(int threads) throws InterruptedException {
+
+		String[] selectors = HEURISTICS;
+		SimpleDFS.Branching[] branchings = SimpleDFS.Branching.values();
+
+		threads = Math.min(threads, selectors.length * branchings.length);
+
+		System.out.println("Program to solve Golomb mark problem - length " + noMarks + ", portfolio of "
+				+ threads + " searches");
+
+		AtomicInteger bestCost = new AtomicInteger(IntDomain.MaxInt);
+		Golomb[] models = new Golomb[threads];
+		SimpleDFS[] searches = new SimpleDFS[threads];
+		String[] names = new String[threads];
+
+		for (int i = 0; i < threads; i++) {
+			models[i] = new Golomb();
+			models[i].noMarks = noMarks;
+			models[i].bound = bound;
+			models[i].decomposed = decomposed;
+			models[i].buildModel();
+
+			searches[i] = new SimpleDFS(models[i].store);
+			searches[i].setVariablesToReport(models[i].numbers);
+			searches[i].setCostVariable(models[i].cost);
+			searches[i].setSharedCost(bestCost);
+			searches[i].setVariableSelector(models[i].selector(selectors[i % selectors.length]));
+			searches[i].setBranching(branchings[i / selectors.length]);
+			searches[i].setTrail(trail);
+			searches[i].setDecisions(decisions);
+			names[i] = selectors[i % selectors.length] + ", " + branchings[i / selectors.length];
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ExecutorCompletionService<Integer> completion = new ExecutorCompletionService<Integer>(pool);
+
+		for (int i = 0; i < threads; i++) {
+			final int index = i;
+			completion.submit(() -> {
+				searches[index].label(models[index].numbers);
+				return index;
+			});
+		}
+
+		int first;
+		try {
+			first = completion.take().get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			for (SimpleDFS search : searches)
+				search.stop();
+			pool.shutdown();
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+		}
+
+		System.out.println("Search (" + names[first] + ") completed first");
+		if (bestCost.get() == IntDomain.MaxInt)
+			System.out.println("No solution");
+		else
+			System.out.println("Optimal cost is " + bestCost.get());
+	}
+
+	/**
+	 * It splits the search tree into subproblems solved by a pool of
+	 * threads, each thread on its own copy of the model and with its own
+	 * instance of the heuristic.
+	 * 
+	 * @param threads number of worker threads.
+	 * @param splitDepth number of levels of the search tree split eagerly.
+	 */
+	public void parallel(int threads, int splitDepth) throws InterruptedException {
+
+		System.out.println("Program to solve Golomb mark problem - length " + noMarks + ", " + threads
+				+ " threads");
+
+		ParallelDFS search = new ParallelDFS(() -> {
+			Golomb copy = new Golomb();
+			copy.noMarks = noMarks;
+			copy.bound = bound;
+			copy.decomposed = decomposed;
+			copy.buildModel();
+			return new ParallelDFS.Model(copy.store, copy.numbers, copy.cost, copy.numbers, copy.selector(heuristic));
+		}, splitDepth, SimpleDFS.Branching.LESS_THAN_EQ);
+
+		boolean result = search.search(threads);
+
+		if (result)
+			System.out.println("Optimal cost is " + search.getBestCost());
+		else
+			System.out.println("No solution");
+	}
+
+	/**
+	 * It solves the problem several times with and without restarts and
+	 * prints the distribution of runtimes. Every run breaks ties of the
+	 * largest domain heuristic at random with its own seed.
+	 * 
+	 * @param schedule restart schedule.
+	 * @param runs number of runs of each configuration.
+	 */
+	public void compareRestarts(RestartSearch.Schedule schedule, int runs) {
+
+		System.out.println("Program to solve Golomb mark problem - length " + noMarks + ", " + runs
+				+ " runs with and without " + schedule + " restarts");
+
+		long[][] times = new long[2][runs];
+
+		for (int run = 0; run < runs; run++) {
+			for (int restarts = 0; restarts < 2; restarts++) {
+				buildModel();
+
+				SimpleDFS search = new SimpleDFS(store);
+				search.setVariablesToReport(numbers);
+				search.setCostVariable(cost);
+				search.setPrintSolutions(false);
+				search.setVariableSelector(VariableSelector.largestDomain(new Random(run)));
+				search.setTrail(trail);
+				search.setDecisions(decisions);
+
+				long start = System.currentTimeMillis();
+				RestartSearch restartSearch = null;
+				if (restarts == 1) {
+					restartSearch = new RestartSearch(search, schedule);
+					restartSearch.label(numbers);
+				} else
+					search.label(numbers);
+				times[restarts][run] = System.currentTimeMillis() - start;
+
+				System.out.println("Run " + run + (restarts == 1 ? " restarts" : " plain   ") + ": cost "
+						+ search.costValue + ", time " + times[restarts][run] + " ms, nodes "
+						+ search.searchNodeCount + ", wrong decisions " + search.wrongDecisionCount
+						+ (restarts == 1 ? ", restarts " + restartSearch.getRestarts() + ", nogoods "
+								+ restartSearch.getNogoodCount() : ""));
+			}
+		}
+
+		for (int restarts = 0; restarts < 2; restarts++) {
+			long[] t = times[restarts];
+			Arrays.sort(t);
+			System.out.println((restarts == 1 ? "With restarts   " : "Without restarts") + ": min " + t[0]
+					+ " ms, median " + t[runs / 2] + " ms, max " + t[runs - 1] + " ms");
+		}
+	}
+
+	/**
+	 * It minimizes the length by discrepancy search, with discrepancy
+	 * limits growing from 0 until a run explores the whole search tree or
+	 * the time limit runs out.
+	 * 
+	 * @param kind limited or depth-bounded discrepancy search.
+	 * @param timeLimit milliseconds allowed for all runs.
+	 */
+	public void discrepancy(DiscrepancySearch.Kind kind, long timeLimit) throws IOException {
+
+		System.out.println("Program to solve Golomb mark problem - length " + noMarks + ", " + kind
+				+ " for at most " + timeLimit / 1000 + " s");
+
+		buildModel();
+
+		if (metricsFile != null) {
+			metrics = new SearchMetrics();
+			metrics.setLogInterval(METRICS_LOG_INTERVAL);
+		}
+
+		search = new SimpleDFS(store);
+		search.setVariablesToReport(numbers);
+		search.setCostVariable(cost);
+		search.setVariableSelector(selector(heuristic));
+		search.setTrail(trail);
+		search.setDecisions(decisions);
+		search.setPrintSolutions(solutionSink == null);
+		search.setMetrics(metrics);
+		search.setSolutionSink(solutionSink);
+
+		DiscrepancySearch discrepancySearch = new DiscrepancySearch(search, kind);
+		discrepancySearch.setTimeLimit(timeLimit);
+
+		long start = System.currentTimeMillis();
+
+		boolean result = discrepancySearch.label(numbers);
+		if (solutionSink != null)
+			solutionSink.close();
+
+		System.out.println(result);
+		System.out.println("Search time: " + (System.currentTimeMillis() - start) + " ms, nodes "
+				+ search.searchNodeCount + ", " + discrepancySearch.getIterations() + " runs, "
+				+ (discrepancySearch.isComplete() ? "optimal" : "not proven optimal"));
+
+		if (metrics != null)
+			metrics.write(metricsFile);
+	}
+
+	/**
+	 * It solves the rulers with from to to marks one after the other and
+	 * writes a line with the time and nodes of every ruler to a CSV file.
+	 * The length of every ruler is bounded by the known optimal length, so
+	 * the search finds it and proves that no shorter ruler exists. A ruler
+	 * that is not solved within the budget is written as not completed.
+	 * The smaller rulers are solved a few times first, so the JIT compiler
+	 * does not slow down the first rulers of the batch.
+	 * 
+	 * @param from smallest number of marks.
+	 * @param to largest number of marks.
+	 * @param budget milliseconds allowed for every ruler.
+	 * @param file name of the CSV file.
+	 */
+	public void batch(int from, int to, long budget, String file) throws IOException {
+
+		System.out.println("Program to solve Golomb mark problem - lengths " + from + " to " + to + ", "
+				+ budget / 1000 + " s each");
+
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+		try (PrintWriter out = new PrintWriter(file)) {
+
+			for (int round = 0; round < WARMUP_ROUNDS; round++)
+				for (int marks = 4; marks <= WARMUP_MARKS; marks++)
+					solve(marks, budget, timer);
+
+			out.println("marks,differences,backtracking,decisions,heuristic,bound,cost,completed,time_ms,nodes,"
+					+ "wrong_decisions,consistency_calls,removed_levels");
+
+			for (int marks = from; marks <= to; marks++) {
+				String line = solve(marks, budget, timer);
+				System.out.println(line);
+				out.println(line);
+				out.flush();
+			}
+		} finally {
+			timer.shutdownNow();
+		}
+	}
+
+	/**
+	 * It solves the ruler with the given number of marks within the known
+	 * optimal length and the budget.
+	 * 
+	 * @return a CSV line with the time and nodes of the search.
+	 */
+	String solve(int marks, long budget, ScheduledExecutorService timer) {
+
+		noMarks = marks;
+		bound = marks < OPTIMAL.length ? OPTIMAL[marks] : -1;
+		buildModel();
+
+		SimpleDFS search = new SimpleDFS(store);
+		search.setVariablesToReport(numbers);
+		search.setCostVariable(cost);
+		search.setPrintSolutions(false);
+		search.setVariableSelector(selector(heuristic));
+		search.setTrail(trail);
+		search.setDecisions(decisions);
+
+		long start = System.nanoTime();
+		ScheduledFuture<?> timeout = timer.schedule(search::stop, budget, TimeUnit.MILLISECONDS);
+		search.label(numbers);
+		timeout.cancel(false);
+		boolean completed = !search.interrupted;
+		long time = (System.nanoTime() - start) / 1000000;
+
+		return marks + "," + (decomposed ? "decomposed" : "global") + "," + (trail ? "trail" : "store") + ","
+				+ (decisions ? "domain" : "constraint") + "," + heuristic + "," + bound + "," + (search.costValue == IntDomain.MaxInt ? "" : search.costValue) + ","
+				+ completed + "," + time + "," + search.searchNodeCount + "," + search.wrongDecisionCount + ","
+				+ store.numberConsistencyCalls + "," + search.removeLevelCount;
+	}
+
+	/**
+	 * It creates a variable selection heuristic for the store of this model.
+	 * 
+	 * @param name one of HEURISTICS.
+	 */
+	VariableSelector selector(String name) {
+		switch (name) {
+		case "smallest":
+			return VariableSelector.SMALLEST_DOMAIN;
+		case "largest":
+			return VariableSelector.LARGEST_DOMAIN;
+		case "input":
+			return VariableSelector.INPUT_ORDER;
+		case "domwdeg":
+			return new DomWDeg(store);
+		case "activity":
+			return new ActivityBased();
+		default:
+			throw new IllegalArgumentException("Unknown heuristic " + name);
+		}
+	}
+
+	/**
+	 * It creates the store with all variables and constraints of the model.
+	 */
+	public void buildModel() {
+
 		store = new Store();
 		ArrayList<IntVar> vars = new ArrayList<IntVar>();
 
-		IntVar numbers[] = new IntVar[noMarks];
+		numbers = new IntVar[noMarks];
 
 		for (int i = 0; i < numbers.length; i++) {
 			// Create FDV for each natural number
@@ -126,9 +650,30 @@ public class Golomb {
 		if (bound > -1)
 			store.impose(new XlteqC(numbers[noMarks - 1], bound));
 
+		cost = numbers[numbers.length - 1];
+
 		// ArrayList contains all differences
 		subs = new ArrayList<IntVar>();
 
+		if (decomposed) {
+			buildDifferences();
+			return;
+		}
+
+		store.impose(new DistinctDifferences(numbers));
+
+		// symmetry breaking constraint, the first difference is smaller
+		// than the last one; they are different already
+		if (noMarks > 2)
+			store.impose(new XplusYlteqZ(numbers[1], numbers[noMarks - 2], numbers[noMarks - 1]));
+	}
+
+	/**
+	 * It creates a variable for the difference of every pair of marks and
+	 * the constraints of the decomposition.
+	 */
+	void buildDifferences() {
+
 		for (int i = 1; i < numbers.length; i++) {
 
 			// for (int j = i - 1; j >= 0; j--) {
@@ -162,16 +707,6 @@ public class Golomb {
 		// All differences have to have unique values
 		store.impose(new Alldiff(subs), 1);
 
-		IntVar cost = numbers[numbers.length - 1];
-
-		SimpleDFS search = new SimpleDFS(store);
-		search.setVariablesToReport(numbers);
-		search.setCostVariable(cost);
-
-		boolean result = search.label(numbers);
-
-		System.out.println(result);
-
 	}
 
 }
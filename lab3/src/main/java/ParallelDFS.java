@@ -0,0 +1,321 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.jacop.constraints.Not;
+import org.jacop.constraints.PrimitiveConstraint;
+import org.jacop.core.IntDomain;
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+
+/**
+ * Parallel depth first search that decomposes the SimpleDFS search tree
+ * into subproblems executed in a ForkJoinPool.
+ *
+ * A subproblem is a path of decisions from the root. The top splitDepth
+ * levels of the binary tree are split eagerly: the right branch is forked
+ * as a new subproblem while the left branch is explored by the same
+ * worker. Below that depth a worker runs a sequential SimpleDFS. When the
+ * pool runs out of tasks, a busy worker donates the shallowest unexplored
+ * right branch of its search so that idle workers can steal it.
+ *
+ * Every worker thread builds its own copy of the model and replays the
+ * decisions of a subproblem on it. All workers share the best cost.
+ */
+public class ParallelDFS {
+
+	/**
+	 * Number of nodes between two checks for idle workers.
+	 */
+	static final int DONATION_INTERVAL = 256;
+
+	/**
+	 * Copy of the model used by one worker.
+	 */
+	public static class Model {
+
+		public final Store store;
+
+		public final IntVar[] vars;
+
+		public final IntVar cost;
+
+		public final IntVar[] report;
+
+		public final VariableSelector selector;
+
+		/**
+		 * @param store store with all constraints imposed.
+		 * @param vars variables to label, in the same order in every copy.
+		 * @param cost cost variable or null for satisfiability search.
+		 * @param report variables printed for a solution.
+		 * @param selector variable selection heuristic of this copy; a
+		 *            heuristic with state of its own needs one per copy.
+		 */
+		public Model(Store store, IntVar[] vars, IntVar cost, IntVar[] report, VariableSelector selector) {
+			this.store = store;
+			this.vars = vars;
+			this.cost = cost;
+			this.report = report;
+			this.selector = selector;
+		}
+	}
+
+	/**
+	 * Builds a new copy of the model for every worker thread.
+	 */
+	final Supplier<Model> factory;
+
+	/**
+	 * Number of levels of the search tree split eagerly.
+	 */
+	final int splitDepth;
+
+	final SimpleDFS.Branching branching;
+
+	/**
+	 * Cost of the best solution found by any worker.
+	 */
+	final AtomicInteger bestCost = new AtomicInteger(IntDomain.MaxInt);
+
+	/**
+	 * Set when a satisfiability search has found a solution.
+	 */
+	volatile boolean solved = false;
+
+	/**
+	 * All workers created so far, used for statistics.
+	 */
+	final ConcurrentLinkedQueue<Worker> workers = new ConcurrentLinkedQueue<Worker>();
+
+	final ThreadLocal<Worker> worker = ThreadLocal.withInitial(this::newWorker);
+
+	ForkJoinPool pool;
+
+	public ParallelDFS(Supplier<Model> factory, int splitDepth, SimpleDFS.Branching branching) {
+		this.factory = factory;
+		this.splitDepth = splitDepth;
+		this.branching = branching;
+	}
+
+	/**
+	 * Searches the model with the given number of worker threads.
+	 *
+	 * @return true if a solution was found.
+	 */
+	public boolean search(int threads) throws InterruptedException {
+
+		long start = System.currentTimeMillis();
+
+		pool = new ForkJoinPool(threads);
+		pool.invoke(new Subproblem(new int[0]));
+		// donated subproblems are not joined by their parents
+		pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		pool.shutdown();
+
+		long time = System.currentTimeMillis() - start;
+
+		int nodes = 0;
+		int index = 0;
+		for (Worker w : workers) {
+			System.out.println("Worker " + index++ + ": nodes " + w.search.searchNodeCount + ", wrong decisions "
+					+ w.search.wrongDecisionCount + ", subproblems " + w.subproblems + ", donated " + w.donated);
+			nodes += w.search.searchNodeCount;
+		}
+		System.out.println("Total node search count: " + nodes);
+		System.out.println("Search time: " + time + " ms");
+
+		if (workers.isEmpty() || workers.peek().model.cost == null)
+			return solved;
+		return bestCost.get() != IntDomain.MaxInt;
+	}
+
+	public int getBestCost() {
+		return bestCost.get();
+	}
+
+	Worker newWorker() {
+		Worker w = new Worker(factory.get());
+		workers.add(w);
+		return w;
+	}
+
+	/**
+	 * A subproblem given as a path of decisions. Every decision takes three
+	 * entries: variable index, value and 1 if the decision is negated.
+	 */
+	class Subproblem extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		final int[] path;
+
+		Subproblem(int[] path) {
+			this.path = path;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (solved)
+				return;
+
+			Worker w = worker.get();
+			w.subproblems++;
+
+			Store store = w.model.store;
+			int base = store.level;
+			store.setLevel(base + 1);
+
+			SimpleDFS.ChoicePoint split = null;
+			if (w.replay(path)) {
+				if (path.length / 3 < splitDepth) {
+					// split this node; the store is consistent after replay
+					w.search.boundInStore = IntDomain.MaxInt;
+					// set first so that the heuristic sees the propagation
+					w.search.variables = new SparseVariableSet(w.model.vars);
+					if (w.search.enterNode()) {
+						while (w.search.variables.size() > 0 && split == null) {
+							SimpleDFS.ChoicePoint choice = w.search.selectChoice();
+							if (!choice.var.singleton())
+								split = choice;
+						}
+						if (split == null)
+							w.solve(path);
+					}
+				} else
+					w.solve(path);
+			}
+
+			store.removeLevel(base + 1);
+			store.setLevel(base);
+
+			if (split != null) {
+				int[] left = Arrays.copyOf(path, path.length + 3);
+				left[path.length] = split.index;
+				left[path.length + 1] = split.value;
+				int[] right = left.clone();
+				right[path.length + 2] = 1;
+
+				new Subproblem(right).fork();
+				new Subproblem(left).compute();
+			}
+		}
+	}
+
+	/**
+	 * State of one worker thread: its copy of the model and its search.
+	 */
+	class Worker {
+
+		final Model model;
+
+		final WorkerSearch search;
+
+		/**
+		 * Decisions of the subproblem currently solved by search.
+		 */
+		int[] prefix;
+
+		int subproblems = 0;
+
+		int donated = 0;
+
+		Worker(Model model) {
+			this.model = model;
+			search = new WorkerSearch(this);
+			search.setVariablesToReport(model.report);
+			search.setCostVariable(model.cost);
+			search.setSharedCost(bestCost);
+			search.setVariableSelector(model.selector);
+			search.setBranching(branching);
+		}
+
+		/**
+		 * Imposes the decisions of a path at the current store level.
+		 *
+		 * @return false if a decision failed immediately.
+		 */
+		boolean replay(int[] path) {
+			for (int i = 0; i < path.length; i += 3) {
+				PrimitiveConstraint c = search.choice(model.vars[path[i]], path[i + 1]).getConstraint();
+				if (path[i + 2] == 1)
+					model.store.impose(new Not(c));
+				else
+					model.store.impose(c);
+			}
+			return model.store.consistency();
+		}
+
+		/**
+		 * Runs the sequential search below a subproblem.
+		 */
+		void solve(int[] path) {
+			prefix = path;
+			if (search.label(model.vars) && model.cost == null) {
+				solved = true;
+				for (Worker w : workers)
+					w.search.stop();
+			}
+		}
+
+		/**
+		 * Hands the shallowest unexplored right branch of the running search
+		 * over to the pool.
+		 */
+		void donate() {
+			SimpleDFS.Frame[] frames = search.frames;
+			int shallowest = 0;
+			while (shallowest < search.top && !frames[shallowest].open)
+				shallowest++;
+			if (shallowest == search.top)
+				return;
+
+			int[] path = Arrays.copyOf(prefix, prefix.length + 3 * (shallowest + 1));
+			for (int i = 0, p = prefix.length; i <= shallowest; i++, p += 3) {
+				path[p] = frames[i].choice.index;
+				path[p + 1] = frames[i].choice.value;
+				path[p + 2] = frames[i].rightBranch || i == shallowest ? 1 : 0;
+			}
+			frames[shallowest].open = false;
+			donated++;
+
+			new Subproblem(path).fork();
+		}
+	}
+
+	/**
+	 * SimpleDFS that donates work when other workers are idle.
+	 */
+	class WorkerSearch extends SimpleDFS {
+
+		final Worker owner;
+
+		WorkerSearch(Worker owner) {
+			super(owner.model.store);
+			this.owner = owner;
+		}
+
+		@Override
+		boolean enterNode() {
+			// stop() is lost if it comes before label() starts
+			if (solved)
+				stop();
+			if (searchNodeCount % DONATION_INTERVAL == 0 && top > 0 && pool.getQueuedTaskCount() == 0
+					&& pool.getActiveThreadCount() < pool.getParallelism())
+				owner.donate();
+			return super.enterNode();
+		}
+
+		@Override
+		public void reportSolution() {
+			if (costVariable != null && costValue > bestCost.get())
+				return;
+			super.reportSolution();
+		}
+	}
+}
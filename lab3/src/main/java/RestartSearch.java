@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+
+import org.jacop.constraints.PrimitiveConstraint;
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+
+/**
+ * Restarts a SimpleDFS whenever it exceeds a number of wrong decisions
+ * given by a restart schedule. At every restart the nogoods of the
+ * abandoned decision path are imposed at the root so that later runs do
+ * not explore refuted subtrees again. The best cost is kept between runs,
+ * so the last run, which is not interrupted, completes the search.
+ */
+public class RestartSearch {
+
+	/**
+	 * Restart schedules; the fail limit of run i is scale times the i-th
+	 * element of the sequence.
+	 */
+	public enum Schedule {
+		/** 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, ... */
+		LUBY,
+		/** 1, f, f^2, f^3, ... */
+		GEOMETRIC
+	}
+
+	final SimpleDFS search;
+
+	final Schedule schedule;
+
+	/**
+	 * Number of wrong decisions of the first run.
+	 */
+	int scale = 100;
+
+	/**
+	 * Growth factor of the geometric schedule.
+	 */
+	double factor = 1.5;
+
+	/**
+	 * Number of restarts done so far.
+	 */
+	int restarts = 0;
+
+	/**
+	 * Number of nogoods imposed so far.
+	 */
+	int nogoodCount = 0;
+
+	boolean trace = false;
+
+	public RestartSearch(SimpleDFS search, Schedule schedule) {
+		this.search = search;
+		this.schedule = schedule;
+	}
+
+	public void setScale(int scale) {
+		this.scale = scale;
+	}
+
+	public void setFactor(double factor) {
+		this.factor = factor;
+	}
+
+	/**
+	 * Labels the variables, restarting the search according to the
+	 * schedule.
+	 *
+	 * @return the result of the last, complete, run of SimpleDFS.
+	 */
+	public boolean label(IntVar[] vars) {
+
+		Store store = search.store;
+
+		while (true) {
+			search.failLimit = limit(restarts);
+			search.nogoods = new ArrayList<PrimitiveConstraint>();
+
+			boolean result = search.label(vars);
+
+			if (!search.failLimitReached) {
+				search.failLimit = Long.MAX_VALUE;
+				search.nogoods = null;
+				return result;
+			}
+
+			// the store is back at the root level; nogoods stay for good
+			for (PrimitiveConstraint nogood : search.nogoods)
+				store.impose(nogood);
+			nogoodCount += search.nogoods.size();
+			restarts++;
+
+			if (trace)
+				System.out.println("Restart " + restarts + ": fail limit " + search.failLimit + ", "
+						+ search.nogoods.size() + " nogoods, nodes " + search.searchNodeCount);
+		}
+	}
+
+	/**
+	 * Returns the fail limit of the given run.
+	 */
+	long limit(int run) {
+		if (schedule == Schedule.GEOMETRIC)
+			return (long) (scale * Math.pow(factor, run));
+		return scale * luby(run + 1);
+	}
+
+	/**
+	 * Returns the i-th element of the Luby sequence, starting at 1.
+	 */
+	static long luby(int i) {
+		int k = 1;
+		while ((1L << k) - 1 < i)
+			k++;
+		while (true) {
+			if (i == (1L << k) - 1)
+				return 1L << (k - 1);
+			i -= (1 << (k - 1)) - 1;
+			k = 1;
+			while ((1L << k) - 1 < i)
+				k++;
+		}
+	}
+
+	public int getRestarts() {
+		return restarts;
+	}
+
+	public int getNogoodCount() {
+		return nogoodCount;
+	}
+}
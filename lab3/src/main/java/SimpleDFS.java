@@ -30,7 +30,12 @@
  *
  */
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.jacop.constraints.Not;
+import org.jacop.constraints.Or;
 import org.jacop.constraints.PrimitiveConstraint;
 import org.jacop.constraints.XeqC;
 import org.jacop.constraints.XgteqC;
@@ -79,98 +84,557 @@ public class SimpleDFS {
 	 */
 	public IntVar costVariable = null;
 
+	/**
+	 * Cost bound shared with other searches; null if not shared.
+	 */
+	AtomicInteger sharedCost = null;
+
+	/**
+	 * Variable selection heuristic used by the choice points.
+	 */
+	VariableSelector variableSelector = VariableSelector.LARGEST_DOMAIN;
+
+	/**
+	 * Kind of choice point created at every node.
+	 */
+	Branching branching = Branching.LESS_THAN_EQ;
+
+	/**
+	 * Set to stop the search at the next node; cleared by every call to
+	 * label().
+	 */
+	volatile boolean stopped = false;
+
+	/**
+	 * True if the last call to label() returned because the search was
+	 * stopped, not because it was done.
+	 */
+	boolean interrupted = false;
+
+	/**
+	 * Number of wrong decisions allowed in one call to label(); the
+	 * search is interrupted when it is exceeded.
+	 */
+	long failLimit = Long.MAX_VALUE;
+
+	/**
+	 * True if the last call to label() was interrupted by the fail limit.
+	 */
+	boolean failLimitReached = false;
+
+	/**
+	 * Receives the nogoods of the decision path when the fail limit is
+	 * reached; nogoods are not recorded if null.
+	 */
+	List<PrimitiveConstraint> nogoods = null;
+
+	/**
+	 * Limits the right branches of a path in label(); not limited if null.
+	 */
+	DiscrepancySearch.Kind discrepancies = null;
+
+	/**
+	 * Number of right branches allowed on a path, or for DDS the number
+	 * of choice points from the root that may take their right branch.
+	 */
+	int discrepancyLimit = 0;
+
+	/**
+	 * True if the last call to label() skipped a right branch because of
+	 * the discrepancy limit.
+	 */
+	boolean discrepancyLimitReached = false;
+
+	/**
+	 * Number of frames on the search stack in their right branch.
+	 */
+	int pathDiscrepancies = 0;
+
+	/**
+	 * Prints every solution found if true.
+	 */
+	boolean printSolutions = true;
+
+	/**
+	 * Stops at the first solution even if there is a cost variable.
+	 */
+	boolean firstSolution = false;
+
+	/**
+	 * Exclusive upper bound on the cost of a solution, in addition to
+	 * the cost of the best solution.
+	 */
+	int probeBound = IntDomain.MaxInt;
+
+	/**
+	 * Exclusive cost bound currently imposed in the store. The bound is
+	 * only imposed again when it becomes tighter, since all ancestors of
+	 * a node already carry it.
+	 */
+	int boundInStore = IntDomain.MaxInt;
+
+	/**
+	 * Number of times a cost bound has been imposed.
+	 */
+	int boundPosts = 0;
+
+	/**
+	 * Number of nodes where imposing the cost bound was skipped because
+	 * the store already had it.
+	 */
+	int boundPostsSaved = 0;
+
+	/**
+	 * Receives the nodes and solutions of the search; null if not measured.
+	 */
+	SearchMetrics metrics = null;
+
+	/**
+	 * Receives the values of variablesToReport for every solution; null
+	 * if solutions are not streamed.
+	 */
+	SolutionSink solutionSink = null;
+
+	/**
+	 * Runs the right branch of every choice point at the level of the
+	 * choice point above instead of a level of its own, and refutes the
+	 * decision on the domain of its variable instead of imposing Not.
+	 */
+	boolean trail = false;
+
+	/**
+	 * Applies every decision to the domain of its variable instead of
+	 * imposing a constraint, and reuses the choice point of every frame.
+	 */
+	boolean decisions = false;
+
+	/**
+	 * True if the decision of the current node failed on its domain, so
+	 * the node is entered as a failure without consistency.
+	 */
+	boolean decisionFailed = false;
+
+	/**
+	 * Number of store levels removed.
+	 */
+	long removeLevelCount = 0;
+
+	/**
+	 * Number of Not constraints imposed for right branches.
+	 */
+	long notCount = 0;
+
+	/**
+	 * Kinds of choice points; the value split used for branching.
+	 */
+	public enum Branching {
+		/** x = min(x) or x != min(x) */
+		EQ,
+		/** x <= middle or x > middle */
+		LESS_THAN_EQ,
+		/** x >= middle or x < middle */
+		GREATER_THAN_EQ
+	}
+
 	public SimpleDFS(Store s) {
 		store = s;
 	}
 
 	/**
-	 * This function is called recursively to assign variables one by one.
+	 * Initial number of choice point frames on the search stack.
+	 */
+	static final int INITIAL_STACK_SIZE = 1024;
+
+	/**
+	 * Explicit search stack; frames are allocated once and reused.
+	 */
+	Frame[] frames = new Frame[INITIAL_STACK_SIZE];
+
+	/**
+	 * Number of frames currently on the search stack.
+	 */
+	int top = 0;
+
+	/**
+	 * Variables still to be labeled in the current node.
+	 */
+	SparseVariableSet variables;
+
+	/**
+	 * This function assigns variables one by one. The search tree is
+	 * traversed iteratively, each open choice point is kept as a frame on
+	 * an explicit stack instead of a Java stack frame.
 	 */
 	public boolean label(IntVar[] vars) {
 
-		if (trace) {
-			for (int i = 0; i < vars.length; i++)
-				System.out.print(vars[i] + " ");
-			System.out.println();
-		}
-		
-		// ChoicePoint choice = null;
-		LessThanEqChoicePoint choice = null;
-		// GreatherThanEqChoicePoint choice = null;
-		boolean consistent;
+		variables = new SparseVariableSet(vars);
+		depth = store.level;
+		top = 0;
+		stopped = false;
+		// right branches of the first choice point are undone with this level
+		if (trail)
+			levelUp();
+		failLimitReached = false;
+		interrupted = false;
+		discrepancyLimitReached = false;
+		pathDiscrepancies = 0;
+		boundInStore = IntDomain.MaxInt;
+		int startFailures = wrongDecisionCount;
+
+		if (metrics != null)
+			metrics.start(store);
+
+		while (true) {
+
+			if (wrongDecisionCount - startFailures > failLimit) {
+				failLimitReached = true;
+				if (nogoods != null)
+					recordNogoods();
+			}
 
-		// Instead of imposing constraint just restrict bounds
-		// -1 since costValue is the cost of last solution
-		if (costVariable != null) {
-			try {
-				if (costVariable.min() <= costValue - 1)
-					costVariable.domain.in(store.level, costVariable, costVariable.min(), costValue - 1);
-				else
-					return false;
-			} catch (FailException f) {
-				return false;
+			if (stopped || failLimitReached) {
+				interrupted = stopped;
+				while (top > 0)
+					pop();
+				return exit(false);
 			}
-		}
 
-		consistent = store.consistency();
+			if (trace) {
+				for (int i = 0; i < variables.size(); i++)
+					System.out.print(variables.get(i) + " ");
+				System.out.println();
+			}
 
-		++searchNodeCount;
-		if (!consistent) {
-			// Failed leaf of the search tree
-			++wrongDecisionCount;
-			return false;
-		} else { // consistent
+			if (enterNode()) {
 
-			if (vars.length == 0) {
-				// solution found; no more variables to label
+				if (variables.size() == 0) {
+					// solution found; no more variables to label
 
-				// update cost if minimization
-				if (costVariable != null)
-					costValue = costVariable.min();
+					// update cost if minimization
+					if (costVariable != null) {
+						costValue = costVariable.min();
+						if (sharedCost != null)
+							sharedCost.accumulateAndGet(costValue, Math::min);
+					}
 
-				reportSolution();
+					if (metrics != null)
+						metrics.solution(costVariable);
 
-				return costVariable == null; // true is satisfiability search and false if minimization
-			}
+					reportSolution();
 
-			// choice = new ChoicePoint(vars);
-			choice = new LessThanEqChoicePoint(vars);
-			// choice = new GreatherThanEqChoicePoint(vars);
+					if (costVariable == null || firstSolution) {
+						// satisfiability search; close all open choice points
+						while (top > 0)
+							pop();
+						return exit(true);
+					}
+					// minimization; continue as if the leaf failed
+				} else {
 
-			levelUp();
+					int size = variables.size();
 
-			store.impose(choice.getConstraint());
+					Frame frame = push();
+					frame.size = size;
+					frame.bound = boundInStore;
+					frame.rightBranch = false;
+					frame.open = true;
 
-			// choice point imposed.
+					levelUp();
 
-			consistent = label(choice.getSearchVariables());
+					if (decisions) {
+						frame.choice = selectChoice(frame.choice);
+						decide(frame.choice, true);
+					} else {
+						frame.choice = selectChoice();
+						frame.constraint = frame.choice.getConstraint();
+						store.impose(frame.constraint);
+					}
 
-			if (consistent) {
-				levelDown();
-				return true;
-			} else {
+					// choice point imposed.
 
-				restoreLevel();
+					continue;
+				}
+			}
 
-				store.impose(new Not(choice.getConstraint()));
+			// Backtrack to the deepest choice point with an unexplored right branch
+			while (top > 0 && (!frames[top - 1].open || !rightBranchAllowed()))
+				pop();
 
-				// negated choice point imposed.
+			if (top == 0)
+				return exit(false);
 
-				consistent = label(vars);
+			Frame frame = frames[top - 1];
+			frame.rightBranch = true;
+			frame.open = false;
+			++pathDiscrepancies;
 
+			if (trail)
+				// the last branch is undone with the level of the choice point above
 				levelDown();
+			else
+				restoreLevel();
+			boundInStore = frame.bound;
 
-				if (consistent) {
-					return true;
-				} else {
+			if (trail || decisions)
+				decide(frame.choice, false);
+			else {
+				store.impose(new Not(frame.constraint));
+				++notCount;
+			}
+
+			// negated choice point imposed.
+
+			variables.restore(frame.size);
+		}
+	}
+
+	/**
+	 * Checks the right branch of the top frame against the discrepancy
+	 * limit, and records that the limit cut the search if it is not
+	 * allowed.
+	 */
+	boolean rightBranchAllowed() {
+		if (discrepancies == null)
+			return true;
+		boolean allowed = discrepancies == DiscrepancySearch.Kind.LDS ? pathDiscrepancies < discrepancyLimit
+				: top <= discrepancyLimit;
+		if (!allowed)
+			discrepancyLimitReached = true;
+		return allowed;
+	}
+
+	/**
+	 * Stops the metrics when label() returns.
+	 */
+	boolean exit(boolean result) {
+		if (trail)
+			levelDown();
+		if (metrics != null)
+			metrics.stop();
+		return result;
+	}
+
+	/**
+	 * Minimizes the cost by dichotomic search. Every probe looks for any
+	 * solution with cost in the lower half of the remaining cost range;
+	 * the range is halved after every probe, whether it finds a solution
+	 * or proves that none exists.
+	 * 
+	 * @return true if a solution was found.
+	 */
+	public boolean labelDichotomic(IntVar[] vars) {
+
+		if (!store.consistency())
+			return false;
+
+		int base = store.level;
+		int low = costVariable.min();
+		firstSolution = true;
+
+		while (true) {
+			int high = Math.min(costValue - 1, costVariable.max());
+			if (low > high)
+				break;
+
+			// first probe looks for any solution
+			int mid = costValue == IntDomain.MaxInt ? high : low + (high - low) / 2;
+
+			probeBound = mid + 1;
+			store.setLevel(base + 1);
+			boolean found = label(vars);
+			store.removeLevel(base + 1);
+			++removeLevelCount;
+			store.setLevel(base);
+
+			if (trace)
+				System.out.println("Probe cost in [" + low + ", " + mid + "]: "
+						+ (found ? "cost " + costValue : "no solution") + ", nodes " + searchNodeCount);
+
+			if (interrupted)
+				break;
+			if (!found)
+				low = mid + 1;
+		}
+
+		firstSolution = false;
+		probeBound = IntDomain.MaxInt;
+		return costValue != IntDomain.MaxInt;
+	}
+
+	/**
+	 * Restricts the cost bound and runs consistency for the current node.
+	 * 
+	 * @return true if the node is consistent, false if it failed.
+	 */
+	boolean enterNode() {
+
+		boolean failed = decisionFailed;
+		decisionFailed = false;
+
+		// Instead of imposing constraint just restrict bounds
+		// -1 since costValue is the cost of last solution
+		if (costVariable != null) {
+			int bound = Math.min(costValue, probeBound);
+			if (sharedCost != null)
+				bound = Math.min(bound, sharedCost.get());
+			if (bound < boundInStore) {
+				++boundPosts;
+				try {
+					if (costVariable.min() <= bound - 1)
+						costVariable.domain.in(store.level, costVariable, costVariable.min(), bound - 1);
+					else
+						return false;
+				} catch (FailException f) {
 					return false;
 				}
-			}
+				boundInStore = bound;
+			} else
+				++boundPostsSaved;
+		}
+
+		if (failed) {
+			++searchNodeCount;
+			++wrongDecisionCount;
+			if (metrics != null)
+				metrics.node(top, false);
+			return false;
+		}
+
+		if (variables != null)
+			variableSelector.beforePropagation(variables);
+
+		boolean consistent = store.consistency();
+
+		if (variables != null)
+			variableSelector.afterPropagation(variables, consistent);
+
+		++searchNodeCount;
+		if (metrics != null)
+			metrics.node(top, consistent);
+		if (!consistent) {
+			// Failed leaf of the search tree
+			++wrongDecisionCount;
+			return false;
 		}
+		return true;
+	}
+
+	/**
+	 * Creates the choice point for the current node.
+	 */
+	ChoicePoint selectChoice() {
+		switch (branching) {
+		case EQ:
+			return new ChoicePoint(variables);
+		case GREATER_THAN_EQ:
+			return new GreatherThanEqChoicePoint(variables);
+		default:
+			return new LessThanEqChoicePoint(variables);
+		}
+	}
+
+	/**
+	 * Selects the choice point for the current node into a choice point
+	 * of the same branching, or creates one if there is none.
+	 */
+	ChoicePoint selectChoice(ChoicePoint reused) {
+		if (reused == null || reused.branching() != branching)
+			return selectChoice();
+		reused.select(variables);
+		return reused;
+	}
+
+	/**
+	 * Applies the decision of a choice point, or its refutation, to the
+	 * domain of its variable; a decision that empties the domain fails
+	 * the next node.
+	 */
+	void decide(ChoicePoint choice, boolean left) {
+		try {
+			if (left)
+				choice.apply();
+			else
+				choice.refute();
+		} catch (FailException f) {
+			decisionFailed = true;
+		}
+	}
+
+	/**
+	 * Creates a choice point on a given variable and value, used to
+	 * replay a decision taken by another search.
+	 */
+	ChoicePoint choice(IntVar var, int value) {
+		switch (branching) {
+		case EQ:
+			return new ChoicePoint(var, value);
+		case GREATER_THAN_EQ:
+			return new GreatherThanEqChoicePoint(var, value);
+		default:
+			return new LessThanEqChoicePoint(var, value);
+		}
+	}
+
+	/**
+	 * Records the nogoods of the current decision path. For every choice
+	 * point in its right branch the left decision together with all
+	 * positive decisions above it has been refuted, so at least one of
+	 * them must be false.
+	 */
+	void recordNogoods() {
+		for (int i = 0; i < top; i++) {
+			if (!frames[i].rightBranch)
+				continue;
+
+			int size = 1;
+			for (int j = 0; j < i; j++)
+				if (!frames[j].rightBranch)
+					size++;
+
+			PrimitiveConstraint[] negated = new PrimitiveConstraint[size];
+			int k = 0;
+			for (int j = 0; j < i; j++)
+				if (!frames[j].rightBranch)
+					negated[k++] = new Not(choice(frames[j].choice.var, frames[j].choice.value).getConstraint());
+			negated[k] = new Not(choice(frames[i].choice.var, frames[i].choice.value).getConstraint());
+
+			if (size == 1)
+				nogoods.add(negated[0]);
+			else
+				nogoods.add(new Or(negated));
+		}
+	}
+
+	/**
+	 * Pushes a frame on the search stack, growing the stack if needed.
+	 */
+	Frame push() {
+		if (top == frames.length)
+			frames = Arrays.copyOf(frames, frames.length * 2);
+		if (frames[top] == null)
+			frames[top] = new Frame();
+		return frames[top++];
+	}
+
+	/**
+	 * Removes the top frame from the search stack and leaves its level;
+	 * in trail mode a frame in its right branch has no level left.
+	 */
+	void pop() {
+		Frame frame = frames[--top];
+		if (!trail || !frame.rightBranch)
+			levelDown();
+		if (frame.rightBranch)
+			--pathDiscrepancies;
+		boundInStore = frame.bound;
+		if (!decisions)
+			frame.choice = null;
+		frame.constraint = null;
 	}
 
 	void levelDown() {
 		store.removeLevel(depth);
+		++removeLevelCount;
 		store.setLevel(--depth);
 	}
 
@@ -180,19 +644,29 @@ public class SimpleDFS {
 
 	void restoreLevel() {
 		store.removeLevel(depth);
+		++removeLevelCount;
 		store.setLevel(store.level);
 	}
 
 	public void reportSolution() {
+		if (solutionSink != null)
+			solutionSink.put(variablesToReport);
+
+		if (!printSolutions)
+			return;
+
+		// printed at once so that concurrent searches do not interleave
+		StringBuilder report = new StringBuilder();
 		if (costVariable != null)
-			System.out.println("Cost is " + costVariable);
+			report.append("Cost is " + costVariable + "\n");
 
-		System.out.println("Total node search count: " + searchNodeCount);
-		System.out.println("Wrong descisions: " + wrongDecisionCount);
+		report.append("Total node search count: " + searchNodeCount + "\n");
+		report.append("Wrong descisions: " + wrongDecisionCount + "\n");
 
 		for (int i = 0; i < variablesToReport.length; i++)
-			System.out.print(variablesToReport[i] + " ");
-		System.out.println("\n---------------");
+			report.append(variablesToReport[i] + " ");
+		report.append("\n---------------");
+		System.out.println(report);
 	}
 
 	public void setVariablesToReport(IntVar[] v) {
@@ -203,33 +677,149 @@ public class SimpleDFS {
 		costVariable = v;
 	}
 
+	/**
+	 * Shares the cost bound with other searches. Every solution found
+	 * lowers the shared bound and every node is pruned with it.
+	 */
+	public void setSharedCost(AtomicInteger cost) {
+		sharedCost = cost;
+	}
+
+	public void setVariableSelector(VariableSelector selector) {
+		variableSelector = selector;
+	}
+
+	public void setBranching(Branching b) {
+		branching = b;
+	}
+
+	/**
+	 * Applies decisions to the domains of their variables at the store
+	 * level instead of imposing constraints, with choice points reused
+	 * from frame to frame, if true.
+	 */
+	public void setDecisions(boolean d) {
+		decisions = d;
+	}
+
+	/**
+	 * Runs right branches without a store level and a Not constraint of
+	 * their own if true.
+	 */
+	public void setTrail(boolean t) {
+		trail = t;
+	}
+
+	public void setPrintSolutions(boolean print) {
+		printSolutions = print;
+	}
+
+	/**
+	 * Measures the search with the given metrics; a search measured in
+	 * several calls to label() is reported as one run.
+	 */
+	public void setMetrics(SearchMetrics m) {
+		metrics = m;
+	}
+
+	/**
+	 * Streams every solution to the sink, in addition to printing it if
+	 * printSolutions is set.
+	 */
+	public void setSolutionSink(SolutionSink sink) {
+		solutionSink = sink;
+	}
+
+	/**
+	 * Stops the search; label() returns false at the next node. Can be
+	 * called from another thread. Only the running call to label() is
+	 * stopped, a later call searches again.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Open choice point on the explicit search stack.
+	 */
+	static class Frame {
+
+		/**
+		 * Number of search variables left in the right branch.
+		 */
+		int size;
+
+		/**
+		 * Cost bound in the store before the choice point.
+		 */
+		int bound;
+
+		/**
+		 * Choice point of this frame.
+		 */
+		ChoicePoint choice;
+
+		/**
+		 * Constraint imposed in the left branch.
+		 */
+		PrimitiveConstraint constraint;
+
+		/**
+		 * True when the left branch has been refuted.
+		 */
+		boolean rightBranch;
+
+		/**
+		 * True while the right branch is still to be explored here.
+		 */
+		boolean open;
+	}
+
 	public class ChoicePoint {
 
 		IntVar var;
-		IntVar[] searchVariables;
 		int value;
 
-		public ChoicePoint(IntVar[] v) {
+		/**
+		 * Index of var in the array being labeled; -1 if not selected.
+		 */
+		int index = -1;
+
+		public ChoicePoint(SparseVariableSet v) {
+			select(v);
+		}
+
+		public ChoicePoint(IntVar var, int value) {
+			this.var = var;
+			this.value = value;
+		}
+
+		/**
+		 * selects the variable and value of this choice point again, for
+		 * another node
+		 */
+		void select(SparseVariableSet v) {
+			index = -1;
 			var = selectVariable(v);
 			value = selectValue(var);
 		}
 
-		public IntVar[] getSearchVariables() {
-			return searchVariables;
+		Branching branching() {
+			return Branching.EQ;
 		}
 
 		/**
-		 * example variable selection; input order
+		 * variable selection; the variable is always assigned so it is
+		 * removed from the set
 		 */
-		IntVar selectVariable(IntVar[] v) {
-			if (v.length != 0) {
+		IntVar selectVariable(SparseVariableSet v) {
+			if (v.size() != 0) {
 
-				searchVariables = new IntVar[v.length - 1];
-				for (int i = 0; i < v.length - 1; i++) {
-					searchVariables[i] = v[i + 1];
-				}
-
-				return v[0];
+				int position = variableSelector.select(v);
+				index = v.index(position);
+				IntVar pickedVar = v.get(position);
+				v.remove(position);
+				return pickedVar;
 
 			} else {
 				System.err.println("Zero length list of variables for labeling");
@@ -250,117 +840,48 @@ public class SimpleDFS {
 		public PrimitiveConstraint getConstraint() {
 			return new XeqC(var, value);
 		}
-	}
 
-	public class LessThanEqChoicePoint {
+		/**
+		 * assigns the value to the variable, the left branch
+		 */
+		void apply() {
+			var.domain.in(store.level, var, value, value);
+		}
 
-		IntVar var;
-		IntVar[] searchVariables;
-		int value;
+		/**
+		 * removes the value from the variable, the right branch
+		 */
+		void refute() {
+			var.domain.inComplement(store.level, var, value);
+		}
+	}
 
-		public LessThanEqChoicePoint(IntVar[] v) {
-			var = selectVariable(v);
-			value = selectValue(var);
+	public class LessThanEqChoicePoint extends ChoicePoint {
+
+		public LessThanEqChoicePoint(SparseVariableSet v) {
+			super(v);
 		}
 
-		public IntVar[] getSearchVariables() {
-			return searchVariables;
+		public LessThanEqChoicePoint(IntVar var, int value) {
+			super(var, value);
 		}
 
 		/**
-		 * example variable selection; input order
+		 * variable selection; delegated to the variable selector
 		 */
-		IntVar selectVariable(IntVar[] v) {
-			if (v.length != 0) {
-
-				/**
-				 * FIND THE VARIABLE WITH THE SMALLEST DOMAIN
-				 */
-				// int minDomain = Integer.MAX_VALUE;
-				// int index = 0;
-				// for (int i = 0; i < v.length; i++) {
-				// 	int domain = domainSize(v[i]);
-				// 	if (domain <= minDomain) {
-				// 		minDomain = domain;
-				// 		index = i;
-				// 	}
-				// }
-
-				// IntVar pickedVar = v[index];
-
-				// /**
-				//  * If the domain is only one value, remove the variable
-				//  */
-				// if (pickedVar.min() == pickedVar.max()) {
-				// 	searchVariables = new IntVar[v.length - 1];
-				// 	for (int i = 0; i < v.length - 1; i++) {
-				// 		int otherIndex = i;
-				// 		if (i >= index) {
-				// 			++otherIndex;
-				// 		}
-				// 		searchVariables[i] = v[otherIndex];
-				// 	}
-				// 	return pickedVar;
-				// } else { // else, keep the variable
-				// 	searchVariables = new IntVar[v.length];
-				// 	for (int i = 0; i < v.length; i++) {
-				// 		searchVariables[i] = v[i];
-				// 	}
-				// 	return pickedVar;
-				// }
-
-				/**
-				 * FIND THE VARIABLE WITH THE LARGEST DOMAIN
-				 */
-				int maxDomain = Integer.MIN_VALUE;
-				int index = 0;
-				for (int i = 0; i < v.length; i++) {
-					int domain = domainSize(v[i]);
-					if (domain >= maxDomain) {
-						maxDomain = domain;
-						index = i;
-					}
-				}
+		IntVar selectVariable(SparseVariableSet v) {
+			if (v.size() != 0) {
 
-				IntVar pickedVar = v[index];
+				int position = variableSelector.select(v);
+				index = v.index(position);
+				IntVar pickedVar = v.get(position);
 
 				/**
 				 * If the domain is only one value, remove the variable
 				 */
-				if (pickedVar.min() == pickedVar.max()) {
-					searchVariables = new IntVar[v.length - 1];
-					for (int i = 0; i < v.length - 1; i++) {
-						int otherIndex = i;
-						if (i >= index) {
-							++otherIndex;
-						}
-						searchVariables[i] = v[otherIndex];
-					}
-					return pickedVar;
-				} else { // else, keep the variable
-					searchVariables = new IntVar[v.length];
-					for (int i = 0; i < v.length; i++) {
-						searchVariables[i] = v[i];
-					}
-					return pickedVar;
-				}
-
-				/**
-				 * PICK FIRST VALUE IN LIST
-				 */
-				// if (v[0].min() == v[0].max()) {
-				// 	searchVariables = new IntVar[v.length - 1];
-				// 	for (int i = 0; i < v.length - 1; i++) {
-				// 		searchVariables[i] = v[i + 1];
-				// 	}
-				// 	return v[0];
-				// } else {
-				// 	searchVariables = new IntVar[v.length];
-				// 	for (int i = 0; i < v.length; i++) {
-				// 		searchVariables[i] = v[i];
-				// 	}
-				// 	return v[0];
-				// }
+				if (pickedVar.min() == pickedVar.max())
+					v.remove(position);
+				return pickedVar;
 
 			} else {
 				System.err.println("Zero length list of variables for labeling");
@@ -368,10 +889,6 @@ public class SimpleDFS {
 			}
 		}
 
-		private int domainSize(IntVar v) {
-			return v.max() - v.min();
-		}
-
 		/**
 		 * example value selection; middle point of domain
 		 */
@@ -385,117 +902,52 @@ public class SimpleDFS {
 		public PrimitiveConstraint getConstraint() {
 			return new XlteqC(var, value);
 		}
-	}
-
-	public class GreatherThanEqChoicePoint {
-
-		IntVar var;
-		IntVar[] searchVariables;
-		int value;
 
-		public GreatherThanEqChoicePoint(IntVar[] v) {
-			var = selectVariable(v);
-			value = selectValue(var);
+		Branching branching() {
+			return Branching.LESS_THAN_EQ;
 		}
 
-		public IntVar[] getSearchVariables() {
-			return searchVariables;
+		/**
+		 * lowers the variable to the value, the left branch
+		 */
+		void apply() {
+			var.domain.inMax(store.level, var, value);
 		}
 
 		/**
-		 * example variable selection; input order
+		 * raises the variable above the value, the right branch
 		 */
-		IntVar selectVariable(IntVar[] v) {
-			if (v.length != 0) {
+		void refute() {
+			var.domain.inMin(store.level, var, value + 1);
+		}
+	}
 
-				/**
-				 * FIND THE VARIABLE WITH THE SMALLEST DOMAIN
-				 */
-				int minDomain = Integer.MAX_VALUE;
-				int index = 0;
-				for (int i = 0; i < v.length; i++) {
-					int domain = domainSize(v[i]);
-					if (domain <= minDomain) {
-						minDomain = domain;
-						index = i;
-					}
-				}
+	public class GreatherThanEqChoicePoint extends ChoicePoint {
 
-				IntVar pickedVar = v[index];
+		public GreatherThanEqChoicePoint(SparseVariableSet v) {
+			super(v);
+		}
 
-				/**
-				 * If the domain is only one value, remove the variable
-				 */
-				if (pickedVar.min() == pickedVar.max()) {
-					searchVariables = new IntVar[v.length - 1];
-					for (int i = 0; i < v.length - 1; i++) {
-						int otherIndex = i;
-						if (i >= index) {
-							++otherIndex;
-						}
-						searchVariables[i] = v[otherIndex];
-					}
-					return pickedVar;
-				} else { // else, keep the variable
-					searchVariables = new IntVar[v.length];
-					for (int i = 0; i < v.length; i++) {
-						searchVariables[i] = v[i];
-					}
-					return pickedVar;
-				}
+		public GreatherThanEqChoicePoint(IntVar var, int value) {
+			super(var, value);
+		}
 
-				/**
-				 * FIND THE VARIABLE WITH THE LARGEST DOMAIN
-				 */
-				// int maxDomain = Integer.MIN_VALUE;
-				// int index = 0;
-				// for (int i = 0; i < v.length; i++) {
-				// 	int domain = domainSize(v[i]);
-				// 	if (domain >= maxDomain) {
-				// 		maxDomain = domain;
-				// 		index = i;
-				// 	}
-				// }
-
-				// IntVar pickedVar = v[index];
-
-				// /**
-				//  * If the domain is only one value, remove the variable
-				//  */
-				// if (pickedVar.min() == pickedVar.max()) {
-				// 	searchVariables = new IntVar[v.length - 1];
-				// 	for (int i = 0; i < v.length - 1; i++) {
-				// 		int otherIndex = i;
-				// 		if (i >= index) {
-				// 			++otherIndex;
-				// 		}
-				// 		searchVariables[i] = v[otherIndex];
-				// 	}
-				// 	return pickedVar;
-				// } else { // else, keep the variable
-				// 	searchVariables = new IntVar[v.length];
-				// 	for (int i = 0; i < v.length; i++) {
-				// 		searchVariables[i] = v[i];
-				// 	}
-				// 	return pickedVar;
-				// }
+		/**
+		 * variable selection; delegated to the variable selector
+		 */
+		IntVar selectVariable(SparseVariableSet v) {
+			if (v.size() != 0) {
+
+				int position = variableSelector.select(v);
+				index = v.index(position);
+				IntVar pickedVar = v.get(position);
 
 				/**
-				 * PICK FIRST VALUE IN LIST
+				 * If the domain is only one value, remove the variable
 				 */
-				// if (v[0].min() == v[0].max()) {
-				// 	searchVariables = new IntVar[v.length - 1];
-				// 	for (int i = 0; i < v.length - 1; i++) {
-				// 		searchVariables[i] = v[i + 1];
-				// 	}
-				// 	return v[0];
-				// } else {
-				// 	searchVariables = new IntVar[v.length];
-				// 	for (int i = 0; i < v.length; i++) {
-				// 		searchVariables[i] = v[i];
-				// 	}
-				// 	return v[0];
-				// }
+				if (pickedVar.min() == pickedVar.max())
+					v.remove(position);
+				return pickedVar;
 
 			} else {
 				System.err.println("Zero length list of variables for labeling");
@@ -503,10 +955,6 @@ public class SimpleDFS {
 			}
 		}
 
-		private int domainSize(IntVar v) {
-			return v.max() - v.min();
-		}
-
 		/**
 		 * example value selection; middle point of domain
 		 */
@@ -520,5 +968,23 @@ public class SimpleDFS {
 		public PrimitiveConstraint getConstraint() {
 			return new XgteqC(var, value);
 		}
+
+		Branching branching() {
+			return Branching.GREATER_THAN_EQ;
+		}
+
+		/**
+		 * raises the variable to the value, the left branch
+		 */
+		void apply() {
+			var.domain.inMin(store.level, var, value);
+		}
+
+		/**
+		 * lowers the variable below the value, the right branch
+		 */
+		void refute() {
+			var.domain.inMax(store.level, var, value - 1);
+		}
 	}
 }
@@ -0,0 +1,72 @@
+import org.jacop.core.IntVar;
+
+/**
+ * Set of search variables kept as a permutation of indexes into the
+ * original variable array. The first size() positions hold the variables
+ * still to be labeled. Removing a variable swaps it behind the boundary in
+ * O(1) and backtracking only resets the boundary, so no arrays are copied
+ * during search.
+ */
+public class SparseVariableSet {
+
+	/**
+	 * Original variable array, never modified.
+	 */
+	final IntVar[] vars;
+
+	/**
+	 * Permutation of indexes into vars.
+	 */
+	final int[] order;
+
+	/**
+	 * Number of variables still in the set.
+	 */
+	int size;
+
+	public SparseVariableSet(IntVar[] vars) {
+		this.vars = vars;
+		order = new int[vars.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		size = vars.length;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the variable at the given position of the set.
+	 */
+	public IntVar get(int position) {
+		return vars[order[position]];
+	}
+
+	/**
+	 * Returns the index in the original array of the variable at the
+	 * given position of the set.
+	 */
+	public int index(int position) {
+		return order[position];
+	}
+
+	/**
+	 * Removes the variable at the given position by swapping it with the
+	 * last variable of the set.
+	 */
+	public void remove(int position) {
+		int last = --size;
+		int tmp = order[position];
+		order[position] = order[last];
+		order[last] = tmp;
+	}
+
+	/**
+	 * Restores the set to a size recorded earlier. All variables removed
+	 * since then are put back.
+	 */
+	public void restore(int size) {
+		this.size = size;
+	}
+}
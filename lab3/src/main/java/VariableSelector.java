@@ -0,0 +1,101 @@
+import java.util.Random;
+
+import org.jacop.core.IntVar;
+
+/**
+ * Variable selection heuristic used by the SimpleDFS choice points.
+ */
+public interface VariableSelector {
+
+	/**
+	 * Returns the position in the set of the variable to branch on. The
+	 * set is never empty.
+	 */
+	int select(SparseVariableSet v);
+
+	/**
+	 * Called before consistency of every node; adaptive heuristics record
+	 * the state of the variables here.
+	 */
+	default void beforePropagation(SparseVariableSet v) {
+	}
+
+	/**
+	 * Called after consistency of every node.
+	 * 
+	 * @param consistent false if the node failed.
+	 */
+	default void afterPropagation(SparseVariableSet v, boolean consistent) {
+	}
+
+	/**
+	 * Picks the first variable in input order.
+	 */
+	VariableSelector INPUT_ORDER = v -> {
+		int position = 0;
+		for (int i = 1; i < v.size(); i++)
+			if (v.index(i) < v.index(position))
+				position = i;
+		return position;
+	};
+
+	/**
+	 * Picks the variable with the smallest domain, the last one in input
+	 * order on ties.
+	 */
+	VariableSelector SMALLEST_DOMAIN = v -> {
+		int minDomain = Integer.MAX_VALUE;
+		int position = 0;
+		for (int i = 0; i < v.size(); i++) {
+			int domain = domainSize(v.get(i));
+			if (domain < minDomain || domain == minDomain && v.index(i) > v.index(position)) {
+				minDomain = domain;
+				position = i;
+			}
+		}
+		return position;
+	};
+
+	/**
+	 * Picks the variable with the largest domain, the last one in input
+	 * order on ties.
+	 */
+	VariableSelector LARGEST_DOMAIN = v -> {
+		int maxDomain = Integer.MIN_VALUE;
+		int position = 0;
+		for (int i = 0; i < v.size(); i++) {
+			int domain = domainSize(v.get(i));
+			if (domain > maxDomain || domain == maxDomain && v.index(i) > v.index(position)) {
+				maxDomain = domain;
+				position = i;
+			}
+		}
+		return position;
+	};
+
+	/**
+	 * Picks the variable with the largest domain, ties are broken at
+	 * random. Used to obtain different runs of the same search.
+	 */
+	static VariableSelector largestDomain(Random random) {
+		return v -> {
+			int maxDomain = Integer.MIN_VALUE;
+			int position = 0;
+			int ties = 0;
+			for (int i = 0; i < v.size(); i++) {
+				int domain = domainSize(v.get(i));
+				if (domain > maxDomain) {
+					maxDomain = domain;
+					position = i;
+					ties = 1;
+				} else if (domain == maxDomain && random.nextInt(++ties) == 0)
+					position = i;
+			}
+			return position;
+		};
+	}
+
+	static int domainSize(IntVar v) {
+		return v.getSize();
+	}
+}
@@ -0,0 +1,71 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.jacop.core.IntVar;
+import org.jacop.search.DepthFirstSearch;
+import org.jacop.search.IndomainMin;
+import org.jacop.search.Search;
+import org.jacop.search.SelectChoicePoint;
+import org.jacop.search.SimpleSelect;
+import org.jacop.search.SimpleSolutionListener;
+import org.junit.Test;
+
+/**
+ * Compares the DistinctDifferences model with the decomposed model: both
+ * must have the same rulers up to a random length a little above the
+ * optimal one.
+ */
+public class DistinctDifferencesTest {
+
+	@Test
+	public void sameRulersAsDecomposed() {
+		Random random = new Random(1);
+		// the decomposed model has no ruler with two marks
+		for (int marks = 3; marks <= 7; marks++) {
+			for (int instance = 0; instance < 5; instance++) {
+				int bound = Golomb.OPTIMAL[marks] + random.nextInt(6);
+
+				assertEquals(marks + " marks, length <= " + bound, rulers(marks, bound, true),
+						rulers(marks, bound, false));
+			}
+		}
+	}
+
+	/**
+	 * Returns every ruler with at most the given length
+	 */
+	static List<String> rulers(int marks, int bound, boolean decomposed) {
+		Golomb golomb = new Golomb();
+		golomb.noMarks = marks;
+		golomb.bound = bound;
+		golomb.decomposed = decomposed;
+		golomb.buildModel();
+
+		List<String> found = new ArrayList<String>();
+		DepthFirstSearch<IntVar> search = new DepthFirstSearch<IntVar>();
+		search.setPrintInfo(false);
+		search.setSolutionListener(new SimpleSolutionListener<IntVar>() {
+
+			@Override
+			public boolean executeAfterSolution(Search<IntVar> s, SelectChoicePoint<IntVar> select) {
+				boolean result = super.executeAfterSolution(s, select);
+				int[] values = new int[marks];
+				for (int i = 0; i < marks; i++)
+					values[i] = golomb.numbers[i].value();
+				found.add(Arrays.toString(values));
+				return result;
+			}
+		});
+		search.getSolutionListener().searchAll(true);
+		search.getSolutionListener().recordSolutions(false);
+		if (golomb.store.consistency())
+			search.labeling(golomb.store, new SimpleSelect<IntVar>(golomb.numbers, null, new IndomainMin<IntVar>()));
+
+		found.sort(null);
+		return found;
+	}
+}
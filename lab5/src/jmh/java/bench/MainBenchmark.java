@@ -0,0 +1,85 @@
+package bench;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures model construction, time to the first grid and time to
+ * prove the best grid for the three inputs of Main, the
+ * city planning model, scored by the GridScore constraint or by the
+ * SumInt and Element decomposition, and searched cell by cell or counts
+ * first.
+ *
+ * JMH does not accept benchmarks in the default package, so Main is
+ * reached through reflection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MainBenchmark {
+
+    @Param({ "1", "2", "3" })
+    int input;
+
+    @Param({ "global", "decomposed" })
+    String scoring;
+
+    @Param({ "cells", "counts" })
+    String order;
+
+    /**
+     * Instance, built before every invocation of a search benchmark
+     */
+    Object model;
+
+    Method buildModel;
+    Method search;
+
+    @Setup(Level.Trial)
+    public void resolve() throws ReflectiveOperationException {
+        Class<?> c = Class.forName("Main");
+        // buildModel replaces the whole model, so one instance serves the trial
+        model = c.getMethod("input", int.class).invoke(null, input);
+        c.getField("decomposed").setBoolean(model, scoring.equals("decomposed"));
+        c.getField("countsFirst").setBoolean(model, order.equals("counts"));
+        buildModel = c.getMethod("buildModel");
+        search = c.getMethod("search", boolean.class, boolean.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void build() throws ReflectiveOperationException {
+        buildModel.invoke(model);
+    }
+
+    @Benchmark
+    public Object construction() throws ReflectiveOperationException {
+        buildModel.invoke(model);
+        return model;
+    }
+
+    @Benchmark
+    public Object firstSolution() throws ReflectiveOperationException {
+        return search.invoke(model, false, false);
+    }
+
+    @Benchmark
+    public Object optimal() throws ReflectiveOperationException {
+        return search.invoke(model, true, false);
+    }
+}
@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.jacop.constraints.Constraint;
+import org.jacop.core.IntDomain;
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+import org.jacop.core.Var;
+
+/**
+ * Requires a 0/1 matrix with the row and column counts to exist. By the
+ * Gale-Ryser theorem it does if the counts have the same sum and, for every
+ * k, the k largest row counts sum to at most
+ *
+ *   sum of min(colCount[j], k) over j
+ *
+ * and so do the k largest column counts with the rows. The condition is
+ * checked with the smallest row counts against the largest column counts,
+ * and the other way round, so it only fails when no counts still possible
+ * pass it; once every count is fixed it is exact if the sums are equal.
+ * The same sums bound every count from above by the other lines, and from
+ * below by what the lines across need from it. The equal sums themselves
+ * are not enforced here, so the counts must be summed by other constraints,
+ * as Main does with SumInt.
+ */
+public class GaleRyser extends Constraint {
+
+    static int idNumber = 1;
+
+    final IntVar[] rowCount;
+    final IntVar[] colCount;
+
+    final int n;
+
+    /**
+     * Smallest counts of the lines, sorted, the number of largest counts
+     * across of every value, and the sums of both for k lines
+     */
+    final int[] least;
+    final int[] most;
+    final int[] needed;
+    final int[] given;
+
+    /**
+     * @param rowCount ones of every row
+     * @param colCount ones of every column, as many as rows
+     */
+    public GaleRyser(IntVar[] rowCount, IntVar[] colCount) {
+        numberId = idNumber++;
+        n = rowCount.length;
+        numberArgs = 2 * n;
+
+        this.rowCount = rowCount;
+        this.colCount = colCount;
+
+        least = new int[n];
+        most = new int[n + 2];
+        needed = new int[n + 1];
+        given = new int[n + 1];
+    }
+
+    @Override
+    public ArrayList<Var> arguments() {
+        ArrayList<Var> variables = new ArrayList<Var>(numberArgs);
+        for (IntVar v : rowCount) {
+            variables.add(v);
+        }
+        for (IntVar v : colCount) {
+            variables.add(v);
+        }
+        return variables;
+    }
+
+    @Override
+    public void consistency(Store store) {
+        do {
+            store.propagationHasOccurred = false;
+
+            prune(store, rowCount, colCount);
+            prune(store, colCount, rowCount);
+        } while (store.propagationHasOccurred);
+    }
+
+    /**
+     * Fills needed[k] with the sum of the k largest of the smallest counts
+     * of the lines, and given[k] with what the largest counts across can
+     * give to k lines, sum of min(count, k)
+     */
+    void tables(IntVar[] lines, IntVar[] across) {
+        for (int i = 0; i < n; i++) {
+            least[i] = lines[i].min();
+        }
+        Arrays.sort(least);
+
+        // most[v] is the number of largest counts across of at least v
+        Arrays.fill(most, 0);
+        for (IntVar c : across) {
+            most[Math.min(c.max(), n)]++;
+        }
+        for (int v = n - 1; v >= 1; v--) {
+            most[v] += most[v + 1];
+        }
+
+        for (int k = 1; k <= n; k++) {
+            needed[k] = needed[k - 1] + least[n - k];
+            given[k] = given[k - 1] + most[k];
+        }
+    }
+
+    boolean holds(IntVar[] lines, IntVar[] across) {
+        tables(lines, across);
+        for (int k = 1; k <= n; k++) {
+            if (needed[k] > given[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fails if the condition does not hold, lowers every count of the lines
+     * to what is left with the k - 1 largest other counts, and raises every
+     * count across to what the other counts across leave short
+     */
+    void prune(Store store, IntVar[] lines, IntVar[] across) {
+        if (!holds(lines, across)) {
+            throw Store.failException;
+        }
+
+        for (IntVar c : lines) {
+            int min = c.min();
+            int max = c.max();
+            for (int k = 1; k <= n; k++) {
+                // the k - 1 largest smallest counts of the other lines
+                int others = min >= least[n - k] ? needed[k] - min : needed[k - 1];
+                max = Math.min(max, given[k] - others);
+            }
+            if (max < c.max()) {
+                c.domain.inMax(store.level, c, max);
+            }
+        }
+
+        for (IntVar c : across) {
+            int min = c.min();
+            for (int k = 1; k <= n; k++) {
+                min = Math.max(min, needed[k] - (given[k] - Math.min(c.max(), k)));
+            }
+            if (min > c.min()) {
+                c.domain.inMin(store.level, c, min);
+            }
+        }
+    }
+
+    @Override
+    public int getConsistencyPruningEvent(Var var) {
+        if (consistencyPruningEvents != null) {
+            Integer event = consistencyPruningEvents.get(var);
+            if (event != null) {
+                return event;
+            }
+        }
+        return IntDomain.BOUND;
+    }
+
+    @Override
+    public void impose(Store store) {
+        for (Var v : arguments()) {
+            v.putModelConstraint(this, getConsistencyPruningEvent(v));
+        }
+        store.addChanged(this);
+        store.countConstraint();
+    }
+
+    @Override
+    public void removeConstraint() {
+        for (Var v : arguments()) {
+            v.removeConstraint(this);
+        }
+    }
+
+    @Override
+    public boolean satisfied() {
+        for (int i = 0; i < n; i++) {
+            if (!rowCount[i].singleton() || !colCount[i].singleton()) {
+                return false;
+            }
+        }
+        return holds(rowCount, colCount) && holds(colCount, rowCount);
+    }
+
+    @Override
+    public void increaseWeight() {
+        if (increaseWeight) {
+            for (Var v : arguments()) {
+                v.weight++;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return id() + " : GaleRyser(" + Arrays.asList(rowCount) + ", " + Arrays.asList(colCount) + ")";
+    }
+}
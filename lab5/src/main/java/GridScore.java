@@ -0,0 +1,432 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.jacop.constraints.Constraint;
+import org.jacop.core.IntDomain;
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+import org.jacop.core.Var;
+
+/**
+ * Counts the residentials of every row and column of a 0/1 grid and sums
+ * their points:
+ *
+ *   rowCount[i] = sum of grid[i][j] over j, colCount[j] likewise
+ *   sum of rowCount = total
+ *   score = sum of points[rowCount[i]] + sum of points[colCount[j]]
+ *
+ * One propagator replaces the SumInt and Element constraints of every row
+ * and column. It keeps one long per row and per column with the
+ * residential cells and one with the open cells, so the bounds of every
+ * count are two popcounts. A cell leaves the open cells when it is fixed,
+ * and returns when the level it was fixed on is removed. The counts are
+ * bounded by the cells and by the total, rows or columns which reach a
+ * bound of their count are filled, and the score is bounded by the best
+ * and the worst points of every count. Counts that cannot reach the score
+ * any more are removed.
+ */
+public class GridScore extends Constraint {
+
+    static int idNumber = 1;
+
+    final IntVar[][] grid;
+
+    final IntVar[] rowCount;
+    final IntVar[] colCount;
+
+    /**
+     * Number of residentials in the grid
+     */
+    final int total;
+
+    /**
+     * Points of a row or column by its number of residentials
+     */
+    final int[] points;
+
+    /**
+     * Largest difference between two points
+     */
+    final int pointRange;
+
+    final IntVar score;
+
+    final int n;
+
+    /**
+     * Residential and open cells of every row and column, bit j of row i
+     * and bit i of column j for cell (i, j)
+     */
+    final long[] rowOnes;
+    final long[] rowOpen;
+    final long[] colOnes;
+    final long[] colOpen;
+
+    /**
+     * Cell of every grid variable by its index in the store less
+     * firstIndex, i * n + j for grid[i][j], and -1 for other variables
+     */
+    final int[] cell;
+    final int firstIndex;
+
+    /**
+     * Fixed cells in the order they were fixed, and the level of each, so
+     * that removeLevel() can open them again
+     */
+    final int[] fixed;
+    final int[] fixedLevel;
+    int fixedSize = 0;
+
+    /**
+     * Best and worst points of every count, rows first
+     */
+    final int[] best;
+    final int[] worst;
+
+    /**
+     * @param grid n x n cells, 1 for residential, n at most 64
+     * @param rowCount residentials of every row
+     * @param colCount residentials of every column
+     * @param total residentials in the grid
+     * @param points points by number of residentials, n + 1 values
+     * @param score sum of the points of all rows and columns
+     */
+    public GridScore(IntVar[][] grid, IntVar[] rowCount, IntVar[] colCount, int total, int[] points, IntVar score) {
+        n = grid.length;
+        if (n > 64) {
+            throw new IllegalArgumentException("GridScore holds a row in a long, n = " + n + " is too large");
+        }
+        if (points.length != n + 1) {
+            throw new IllegalArgumentException("GridScore needs " + (n + 1) + " points, got " + points.length);
+        }
+
+        numberId = idNumber++;
+        numberArgs = n * n + 2 * n + 1;
+
+        this.grid = grid;
+        this.rowCount = rowCount;
+        this.colCount = colCount;
+        this.total = total;
+        this.points = points;
+        this.score = score;
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int p : points) {
+            min = Math.min(min, p);
+            max = Math.max(max, p);
+        }
+        pointRange = max - min;
+
+        rowOnes = new long[n];
+        rowOpen = new long[n];
+        colOnes = new long[n];
+        colOpen = new long[n];
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (IntVar[] row : grid) {
+            for (IntVar v : row) {
+                first = Math.min(first, v.index);
+                last = Math.max(last, v.index);
+            }
+        }
+        firstIndex = first;
+        cell = new int[last - first + 1];
+        Arrays.fill(cell, -1);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                cell[grid[i][j].index - first] = i * n + j;
+            }
+        }
+        fixed = new int[n * n];
+        fixedLevel = new int[n * n];
+        best = new int[2 * n];
+        worst = new int[2 * n];
+    }
+
+    @Override
+    public ArrayList<Var> arguments() {
+        ArrayList<Var> variables = new ArrayList<Var>(numberArgs);
+        for (IntVar[] row : grid) {
+            for (IntVar v : row) {
+                variables.add(v);
+            }
+        }
+        for (IntVar v : rowCount) {
+            variables.add(v);
+        }
+        for (IntVar v : colCount) {
+            variables.add(v);
+        }
+        variables.add(score);
+        return variables;
+    }
+
+    @Override
+    public void queueVariable(int level, Var var) {
+        int k = var.index - firstIndex;
+        if (k >= 0 && k < cell.length && cell[k] >= 0) {
+            fix(level, cell[k] / n, cell[k] % n);
+        }
+    }
+
+    /**
+     * Moves a cell that has just been fixed from the open cells to the
+     * residentials or to none. Ignored if the cell is no longer open.
+     */
+    void fix(int level, int i, int j) {
+        if ((rowOpen[i] & 1L << j) == 0) {
+            return;
+        }
+        rowOpen[i] &= ~(1L << j);
+        colOpen[j] &= ~(1L << i);
+        if (grid[i][j].min() == 1) {
+            rowOnes[i] |= 1L << j;
+            colOnes[j] |= 1L << i;
+        }
+        fixed[fixedSize] = i * n + j;
+        fixedLevel[fixedSize] = level;
+        fixedSize++;
+    }
+
+    @Override
+    public void removeLevel(int level) {
+        while (fixedSize > 0 && fixedLevel[fixedSize - 1] >= level) {
+            fixedSize--;
+            int i = fixed[fixedSize] / n;
+            int j = fixed[fixedSize] % n;
+            rowOnes[i] &= ~(1L << j);
+            colOnes[j] &= ~(1L << i);
+            rowOpen[i] |= 1L << j;
+            colOpen[j] |= 1L << i;
+        }
+    }
+
+    @Override
+    public void consistency(Store store) {
+        do {
+            store.propagationHasOccurred = false;
+
+            boundCounts(store, rowCount, rowOnes, rowOpen);
+            boundCounts(store, colCount, colOnes, colOpen);
+
+            boundScore(store);
+
+            fill(store, rowCount, rowOnes, rowOpen, true);
+            fill(store, colCount, colOnes, colOpen, false);
+        } while (store.propagationHasOccurred);
+    }
+
+    /**
+     * Reads the grid into the bitsets, which are kept up to date by
+     * queueVariable() afterwards
+     */
+    void read() {
+        for (int i = 0; i < n; i++) {
+            colOnes[i] = 0;
+            colOpen[i] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            long ones = 0;
+            long open = 0;
+            IntVar[] row = grid[i];
+            for (int j = 0; j < n; j++) {
+                IntVar v = row[j];
+                if (v.min() == 1) {
+                    ones |= 1L << j;
+                    colOnes[j] |= 1L << i;
+                } else if (v.max() == 1) {
+                    open |= 1L << j;
+                    colOpen[j] |= 1L << i;
+                }
+            }
+            rowOnes[i] = ones;
+            rowOpen[i] = open;
+        }
+    }
+
+    /**
+     * Bounds every count by its cells, and by the total less the other
+     * counts
+     */
+    void boundCounts(Store store, IntVar[] count, long[] ones, long[] open) {
+        int sumMin = 0;
+        int sumMax = 0;
+        for (int i = 0; i < n; i++) {
+            IntVar c = count[i];
+            int lo = Long.bitCount(ones[i]);
+            int hi = lo + Long.bitCount(open[i]);
+            if (lo > c.min() || hi < c.max()) {
+                c.domain.in(store.level, c, lo, hi);
+            }
+            sumMin += c.min();
+            sumMax += c.max();
+        }
+        if (sumMin > total || sumMax < total) {
+            throw Store.failException;
+        }
+        for (int i = 0; i < n; i++) {
+            IntVar c = count[i];
+            int min = c.min();
+            int max = c.max();
+            // the other counts leave at least lo and at most hi
+            int lo = total - (sumMax - max);
+            int hi = total - (sumMin - min);
+            if (lo > min || hi < max) {
+                c.domain.in(store.level, c, lo, hi);
+            }
+        }
+    }
+
+    /**
+     * Bounds the score by the best and worst points of every count, and
+     * removes the counts that leave the score out of reach
+     */
+    void boundScore(Store store) {
+        int upper = 0;
+        int lower = 0;
+        for (int i = 0; i < 2 * n; i++) {
+            IntVar c = i < n ? rowCount[i] : colCount[i - n];
+            int b = Integer.MIN_VALUE;
+            int w = Integer.MAX_VALUE;
+            for (int v = c.min(); v <= c.max(); v++) {
+                if (c.domain.contains(v)) {
+                    b = Math.max(b, points[v]);
+                    w = Math.min(w, points[v]);
+                }
+            }
+            best[i] = b;
+            worst[i] = w;
+            upper += b;
+            lower += w;
+        }
+        if (lower > score.min() || upper < score.max()) {
+            score.domain.in(store.level, score, lower, upper);
+        }
+
+        int minScore = score.min();
+        int maxScore = score.max();
+        if (upper - minScore >= pointRange && maxScore - lower >= pointRange) {
+            // no count can be removed
+            return;
+        }
+        for (int i = 0; i < 2 * n; i++) {
+            IntVar c = i < n ? rowCount[i] : colCount[i - n];
+            for (int v = c.min(); v <= c.max(); v++) {
+                if (upper - best[i] + points[v] < minScore || lower - worst[i] + points[v] > maxScore) {
+                    if (c.domain.contains(v)) {
+                        c.domain.inComplement(store.level, c, v);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the open cells of every row or column whose count is at the
+     * residentials or at the residentials and open cells, and keeps the
+     * bitsets up to date
+     */
+    void fill(Store store, IntVar[] count, long[] ones, long[] open, boolean rows) {
+        for (int i = 0; i < n; i++) {
+            if (open[i] == 0) {
+                continue;
+            }
+            int lo = Long.bitCount(ones[i]);
+            int value;
+            if (count[i].max() == lo) {
+                value = 0;
+            } else if (count[i].min() == lo + Long.bitCount(open[i])) {
+                value = 1;
+            } else {
+                continue;
+            }
+            for (long cells = open[i]; cells != 0; cells &= cells - 1) {
+                int j = Long.numberOfTrailingZeros(cells);
+                int row = rows ? i : j;
+                int col = rows ? j : i;
+                IntVar v = grid[row][col];
+                v.domain.in(store.level, v, value, value);
+                fix(store.level, row, col);
+            }
+        }
+    }
+
+    @Override
+    public int getConsistencyPruningEvent(Var var) {
+        if (consistencyPruningEvents != null) {
+            Integer event = consistencyPruningEvents.get(var);
+            if (event != null) {
+                return event;
+            }
+        }
+        return var == score ? IntDomain.BOUND : IntDomain.ANY;
+    }
+
+    @Override
+    public void impose(Store store) {
+        read();
+        for (Var v : arguments()) {
+            v.putModelConstraint(this, getConsistencyPruningEvent(v));
+        }
+        store.registerRemoveLevelListener(this);
+        store.addChanged(this);
+        store.countConstraint();
+    }
+
+    @Override
+    public void removeConstraint() {
+        for (Var v : arguments()) {
+            v.removeConstraint(this);
+        }
+    }
+
+    @Override
+    public boolean satisfied() {
+        if (!score.singleton()) {
+            return false;
+        }
+        int sum = 0;
+        int all = 0;
+        for (int i = 0; i < n; i++) {
+            int rowSum = 0;
+            int colSum = 0;
+            for (int j = 0; j < n; j++) {
+                if (!grid[i][j].singleton() || !grid[j][i].singleton()) {
+                    return false;
+                }
+                rowSum += grid[i][j].value();
+                colSum += grid[j][i].value();
+            }
+            if (!rowCount[i].singleton(rowSum) || !colCount[i].singleton(colSum)) {
+                return false;
+            }
+            sum += points[rowSum] + points[colSum];
+            all += rowSum;
+        }
+        return all == total && sum == score.value();
+    }
+
+    @Override
+    public void increaseWeight() {
+        if (increaseWeight) {
+            for (Var v : arguments()) {
+                v.weight++;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(id() + " : GridScore([");
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                result.append(", ");
+            }
+            result.append(Arrays.asList(grid[i]));
+        }
+        result.append("], " + Arrays.asList(rowCount) + ", " + Arrays.asList(colCount) + ", "
+                + total + ", " + Arrays.toString(points) + ", " + score + ")");
+        return result.toString();
+    }
+}
@@ -1,3 +1,5 @@
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.Arrays;
 
 import org.jacop.constraints.Constraint;
@@ -5,100 +7,242 @@ import org.jacop.constraints.Element;
 import org.jacop.constraints.LexOrder;
 import org.jacop.constraints.PrimitiveConstraint;
 import org.jacop.constraints.SumInt;
+import org.jacop.constraints.XgteqY;
 import org.jacop.constraints.XplusYeqC;
 import org.jacop.core.IntVar;
 import org.jacop.core.Store;
 import org.jacop.search.DepthFirstSearch;
+import org.jacop.search.IndomainMiddle;
 import org.jacop.search.IndomainMin;
-import org.jacop.search.Search;
 import org.jacop.search.SelectChoicePoint;
 import org.jacop.search.SimpleMatrixSelect;
+import org.jacop.search.SimpleSelect;
 
 public class Main {
 
+    /**
+     * Instance data
+     */
+    final int n;
+    final int n_residential;
+    final int[] point_distribution;
+
+    /**
+     * Model, created by buildModel()
+     */
+    public Store store;
+    public IntVar[][] grid;
+    public IntVar globalScore;
+    public IntVar negatedGlobalScore;
+    public IntVar[] residentialsPerRow;
+    public IntVar[] residentialsPerCol;
+
+    /**
+     * Count and score with SumInt and Element constraints for every row
+     * and column instead of one GridScore constraint
+     */
+    public boolean decomposed = false;
+
+    /**
+     * Bound the score by the best counts that sum to the residentials with
+     * a ScoreBound constraint
+     */
+    public boolean scoreBound = true;
+
+    /**
+     * Search the row and column counts first, which decide the score, and
+     * fill the grid after them. The counts are sorted instead of the rows
+     * and columns of the grid, and GaleRyser keeps them realizable
+     */
+    public boolean countsFirst = false;
+
+    /**
+     * Search used by the last call to search()
+     */
+    public DepthFirstSearch<IntVar> search;
+
+    /**
+     * Metrics of the search, or null if not measured
+     */
+    public SearchMetrics metrics;
+
+    /**
+     * Receives every solution instead of the console, or null
+     */
+    public SolutionSink solutionSink;
+
+    public Main(int n, int n_residential, int[] point_distribution) {
+        this.n = n;
+        this.n_residential = n_residential;
+        this.point_distribution = point_distribution;
+    }
+
+    /**
+     * Returns a new model of one of the three inputs, so that the flags and
+     * the search of one caller do not leak to another
+     *
+     * @param number 1, 2 or 3
+     */
+    public static Main input(int number) {
+        switch (number) {
+        case 1:
+            return new Main(5, 12, new int[] {-5, -4, -3, 3, 4, 5});
+        case 2:
+            return new Main(5, 18, new int[] {-5, -4, -3, 3, 4, 5});
+        case 3:
+            return new Main(7, 29, new int[] {-7, -6, -5, -4, 4, 5, 6, 7});
+        default:
+            throw new IllegalArgumentException("No input " + number);
+        }
+    }
+
     /**
      * Home = 1
      * Shop = 0
      */
 
-	public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
 
-        /**
-         * Input 1
-         */
-        // int n = 5;
-        // // int n_commercial = 13;
-        // int n_residential = 12;
-        // int[] point_distribution = {-5, -4, -3, 3, 4, 5};
+        Main model = input(3);
 
-        /**
-         * Input 2
-         */
-        // int n = 5;
-        // // int n_commercial = 7;
-        // int n_residential = 18;
-        // int[] point_distribution = {-5, -4, -3, 3, 4, 5};
+        // "-metrics file" writes the search metrics to a .json or .csv file
+        // "-solutions file" writes every solution to a file on a background thread
+        // "-decomposed" scores the grid with SumInt and Element constraints
+        // "-noScoreBound" leaves out the ScoreBound constraint
+        // "-counts" searches the row and column counts before the grid
+        String metricsFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-metrics") && i + 1 < args.length) {
+                metricsFile = args[++i];
+                model.metrics = new SearchMetrics();
+                model.metrics.setLogInterval(10000);
+            } else if (args[i].equals("-solutions") && i + 1 < args.length) {
+                model.solutionSink = new SolutionSink(new FileWriter(args[++i]), 1024);
+            } else if (args[i].equals("-decomposed")) {
+                model.decomposed = true;
+            } else if (args[i].equals("-noScoreBound")) {
+                model.scoreBound = false;
+            } else if (args[i].equals("-counts")) {
+                model.countsFirst = true;
+            }
+        }
+        model.buildModel();
 
-        /**
-         * Input 3
-         */
-        int n = 7;
-        // int n_commercial = 20;
-        int n_residential = 29;
-        int[] point_distribution = {-7, -6, -5, -4, 4, 5, 6, 7};
+        boolean result = model.search(true, true);
+
+        if (model.solutionSink != null) {
+            model.solutionSink.close();
+        }
+        if (metricsFile != null) {
+            model.metrics.write(metricsFile);
+        }
+
+        if (result) {
+            System.out.println("Score: " + model.globalScore.value());
+            System.out.println("_____Grid_____");
+            for(IntVar[] row : model.grid) {
+                for(IntVar var : row) {
+                    System.out.print(var.value() + " ");
+                }
+                System.out.println();
+            }
+        } else {
+            System.out.println("No solution found.");
+        }
+
+    }
+
+    /**
+     * Creates the store with all variables and constraints
+     */
+    public void buildModel() {
 
         /**
          * Create store
          */
-        Store store = new Store();
+        store = new Store();
 
         /**
          * Create the model
          * Residental = 1
          * Commercial = 0
          */
-        IntVar[][] grid = new IntVar[n][n];
+        grid = new IntVar[n][n];
         for(int i = 0; i < n; i++) {
             for(int j = 0; j < n; j++) {
                 grid[i][j] = new IntVar(store, 0, 1);
             }
         }
 
-        // Make sure there are correct number of residentials
-        IntVar amountOfResidentialsInGrid = new IntVar(store, n_residential, n_residential);
-        IntVar[] flattenedGrid = new IntVar[grid.length * grid[0].length];
-        int index = 0;
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[0].length; j++) {
-                flattenedGrid[index] = grid[i][j];
-                index++;
+        // Set variable holding residential sum for every row and column
+        residentialsPerRow = new IntVar[n];
+        residentialsPerCol = new IntVar[n];
+        for(int i = 0; i < n; i++) {
+            residentialsPerRow[i] = new IntVar(store, 0, n);
+            residentialsPerCol[i] = new IntVar(store, 0, n);
+        }
+
+        // Find least possible row/col score
+        int minRowScore = Arrays.stream(point_distribution).min().getAsInt();
+        int maxRowScore = Arrays.stream(point_distribution).max().getAsInt();
+
+        // Set variable storing global score
+        globalScore = new IntVar(store, minRowScore * n * 2, maxRowScore * n * 2);
+
+        if (decomposed) {
+            buildDecomposedScore(minRowScore, maxRowScore);
+        } else {
+            store.impose(new GridScore(grid, residentialsPerRow, residentialsPerCol, n_residential,
+                    point_distribution, globalScore));
+        }
+        if (scoreBound) {
+            store.impose(new ScoreBound(residentialsPerRow, residentialsPerCol, n_residential, point_distribution,
+                    globalScore));
+        }
+
+        // Negate score, since search is minimizing
+        negatedGlobalScore = new IntVar(store, minRowScore * n * 2, maxRowScore * n * 2);
+        store.impose(new XplusYeqC(globalScore, negatedGlobalScore, 0));
+
+        // Ignore permutations of the same solution
+        if (countsFirst) {
+            // The counts are searched before the grid, so they must sum to
+            // the residentials by themselves
+            IntVar residentials = new IntVar(store, n_residential, n_residential);
+            store.impose(new SumInt(store, residentialsPerRow, "==", residentials));
+            store.impose(new SumInt(store, residentialsPerCol, "==", residentials));
+            store.impose(new GaleRyser(residentialsPerRow, residentialsPerCol));
+            for (int i = 0; i < n - 1; i++) {
+                store.impose(new XgteqY(residentialsPerRow[i], residentialsPerRow[i + 1]));
+                store.impose(new XgteqY(residentialsPerCol[i], residentialsPerCol[i + 1]));
+            }
+        } else {
+            for (int i = 1; i < n - 1; i++) {
+                store.impose(new LexOrder(grid[i], grid[i + 1]));
+                store.impose(new LexOrder(getColumn(grid, i), getColumn(grid, i + 1)));
             }
         }
+    }
+
+    /**
+     * Counts the residentials and sums the score with SumInt and Element
+     * constraints for every row and column
+     */
+    void buildDecomposedScore(int minRowScore, int maxRowScore) {
+
+        // Make sure there are correct number of residentials
+        IntVar amountOfResidentialsInGrid = new IntVar(store, n_residential, n_residential);
+        IntVar[] flattenedGrid = flatten(grid);
         PrimitiveConstraint res_in_grid_constraint = new SumInt(store, flattenedGrid, "==", amountOfResidentialsInGrid);
         store.impose(res_in_grid_constraint);
 
-        // Set variable holding residential sum for every row
-        IntVar[] residentialsPerRow = new IntVar[n];
         for(int i = 0; i < n; i++) {
-            IntVar row = new IntVar(store, 0, n);
-            Constraint sumConstraint = new SumInt(store, grid[i], "==", row);
+            Constraint sumConstraint = new SumInt(store, grid[i], "==", residentialsPerRow[i]);
             store.impose(sumConstraint);
-            residentialsPerRow[i] = row;
-        }
-
-        // Set variable holding residentials sum for every column
-        IntVar[] residentialsPerCol = new IntVar[n];
-        for(int i = 0; i < n; i++) {
-            IntVar col = new IntVar(store, 0, n);
-            Constraint sumConstraint = new SumInt(store, getColumn(grid, i), "==", col);
+            sumConstraint = new SumInt(store, getColumn(grid, i), "==", residentialsPerCol[i]);
             store.impose(sumConstraint);
-            residentialsPerCol[i] = col;
         }
 
-        // Find least possible row/col score
-        int minRowScore = Arrays.stream(point_distribution).min().getAsInt();
-        int maxRowScore = Arrays.stream(point_distribution).max().getAsInt();
-
         // Set score variable for every row and col
         IntVar[] allScores = new IntVar[n * 2];
         for(int i = 0; i < n; i++) {
@@ -112,40 +256,61 @@ public class Main {
             store.impose(new Element(residentialsPerCol[i], point_distribution, score, -1));
             allScores[i + n] = score;
         }
-    
-        // Set variable storing global score
-        IntVar globalScore = new IntVar(store, minRowScore * n * 2, maxRowScore * n * 2);
+
         store.impose(new SumInt(store, allScores, "==", globalScore));
+    }
 
-        // Negate score, since search is minimizing
-        IntVar negatedGlobalScore = new IntVar(store, minRowScore * n * 2, maxRowScore * n * 2);
-        store.impose(new XplusYeqC(globalScore, negatedGlobalScore, 0));
+    /**
+     * Searches for the best grid, or for any grid if optimize is false
+     */
+    public boolean search(boolean optimize, boolean print) {
 
-        // Ignore permutations of the same solution
-        for (int i = 1; i < n - 1; i++) {
-            store.impose(new LexOrder(grid[i], grid[i + 1]));
-            store.impose(new LexOrder(getColumn(grid, i), getColumn(grid, i + 1)));
-        }
-    
         // Start search
-        Search<IntVar> search = new DepthFirstSearch<IntVar>();
-        SelectChoicePoint<IntVar> select = new SimpleMatrixSelect<IntVar>(grid, null, new IndomainMin<IntVar>());
-    
-        boolean result = search.labeling(store, select, negatedGlobalScore);
-    
-        if (result) {
-            System.out.println("Score: " + globalScore.value());
-            System.out.println("_____Grid_____");
-            for(IntVar[] row : grid) {
-                for(IntVar var : row) {
-                    System.out.print(var.value() + " ");
-                }
-                System.out.println();
+        search = new DepthFirstSearch<IntVar>();
+        SelectChoicePoint<IntVar> select;
+        DepthFirstSearch<IntVar> gridSearch = search;
+
+        if (countsFirst) {
+            IntVar[] counts = new IntVar[2 * n];
+            for (int i = 0; i < n; i++) {
+                counts[i] = residentialsPerRow[i];
+                counts[i + n] = residentialsPerCol[i];
             }
+            select = new SimpleSelect<IntVar>(counts, null, new IndomainMiddle<IntVar>());
+
+            gridSearch = new DepthFirstSearch<IntVar>();
+            gridSearch.setSelectChoicePoint(new SimpleMatrixSelect<IntVar>(grid, null,
+                    new RyserFill(grid, residentialsPerRow, residentialsPerCol)));
+            gridSearch.setPrintInfo(false);
+            search.addChildSearch(gridSearch);
         } else {
-            System.out.println("No solution found.");
+            select = new SimpleMatrixSelect<IntVar>(grid, null, new IndomainMin<IntVar>());
         }
 
+        search.setPrintInfo(print);
+        if (solutionSink != null) {
+            gridSearch.setSolutionListener(solutionSink.listener(flatten(grid)));
+        }
+        if (metrics != null) {
+            metrics.attach(search);
+        }
+
+        if (optimize) {
+            return search.labeling(store, select, negatedGlobalScore);
+        }
+        return search.labeling(store, select);
+    }
+
+    public static IntVar[] flatten(IntVar[][] matrix) {
+        IntVar[] flat = new IntVar[matrix.length * matrix[0].length];
+        int index = 0;
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix[0].length; j++) {
+                flat[index] = matrix[i][j];
+                index++;
+            }
+        }
+        return flat;
     }
 
     public static IntVar[] getColumn(IntVar[][] matrix, int index) {
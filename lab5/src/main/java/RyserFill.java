@@ -0,0 +1,76 @@
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jacop.core.IntVar;
+import org.jacop.search.Indomain;
+
+/**
+ * Value of a grid cell when the grid is labelled row by row after the row
+ * and column counts: every row takes the columns that still need the most
+ * residentials, as in Ryser's construction. Counts that pass GaleRyser
+ * always leave a grid this way, so the search does not backtrack unless
+ * another constraint disagrees with the cell.
+ */
+public class RyserFill implements Indomain<IntVar> {
+
+    final IntVar[][] grid;
+
+    final IntVar[] rowCount;
+    final IntVar[] colCount;
+
+    final int n;
+
+    /**
+     * Row and column of every cell, as row * n + column
+     */
+    final Map<IntVar, Integer> position;
+
+    /**
+     * Residentials every column still needs below the rows labelled
+     */
+    final int[] needed;
+
+    public RyserFill(IntVar[][] grid, IntVar[] rowCount, IntVar[] colCount) {
+        this.grid = grid;
+        this.rowCount = rowCount;
+        this.colCount = colCount;
+        n = grid.length;
+
+        position = new HashMap<IntVar, Integer>(2 * n * n);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                position.put(grid[i][j], i * n + j);
+            }
+        }
+        needed = new int[n];
+    }
+
+    /**
+     * Returns 1 if the column of the cell is among the rowCount columns of
+     * its row that need the most residentials, earlier columns first on a
+     * tie; the rows above must be labelled
+     */
+    @Override
+    public int indomain(IntVar var) {
+        int p = position.get(var);
+        int row = p / n;
+        int col = p % n;
+
+        for (int j = 0; j < n; j++) {
+            int ones = 0;
+            for (int i = 0; i < row; i++) {
+                ones += grid[i][j].value();
+            }
+            needed[j] = colCount[j].value() - ones;
+        }
+
+        // columns that come before this one
+        int ahead = 0;
+        for (int j = 0; j < n; j++) {
+            if (needed[j] > needed[col] || (needed[j] == needed[col] && j < col)) {
+                ahead++;
+            }
+        }
+        return ahead < rowCount[row].value() ? 1 : 0;
+    }
+}
@@ -0,0 +1,268 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.jacop.constraints.Constraint;
+import org.jacop.core.IntDomain;
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+import org.jacop.core.Var;
+
+/**
+ * Upper bound on the score of the grid from the counts alone:
+ *
+ *   score <= max of sum of points[rowCount[i]] over counts summing to total
+ *          + max of sum of points[colCount[j]] over counts summing to total
+ *
+ * Both maxima are knapsack problems over the current count domains and
+ * are solved by dynamic programming over the rows, from the first and
+ * from the last: best[k][s] is the most points of k rows with s
+ * residentials. A count value is removed if no choice of the other counts
+ * that sums to total reaches the lower bound of the score with it.
+ */
+public class ScoreBound extends Constraint {
+
+    static int idNumber = 1;
+
+    /**
+     * Marks a number of residentials that the rows cannot take
+     */
+    static final int NONE = Integer.MIN_VALUE / 4;
+
+    final IntVar[] rowCount;
+    final IntVar[] colCount;
+
+    final int total;
+
+    final int[] points;
+
+    final IntVar score;
+
+    final int n;
+
+    /**
+     * Most points of the first k and of the last n - k rows or columns
+     * with s residentials, indexed [k][s]
+     */
+    final int[][] rowPrefix;
+    final int[][] rowSuffix;
+    final int[][] colPrefix;
+    final int[][] colSuffix;
+
+    /**
+     * Sums of the first k counts that the other counts can still complete
+     * to total, from low[k] to high[k]; the tables are only filled there
+     */
+    final int[] rowLow;
+    final int[] rowHigh;
+    final int[] colLow;
+    final int[] colHigh;
+
+    /**
+     * @param rowCount residentials of every row
+     * @param colCount residentials of every column
+     * @param total residentials in the grid
+     * @param points points by number of residentials
+     * @param score sum of the points of all rows and columns
+     */
+    public ScoreBound(IntVar[] rowCount, IntVar[] colCount, int total, int[] points, IntVar score) {
+        numberId = idNumber++;
+        n = rowCount.length;
+        numberArgs = 2 * n + 1;
+        // after the cheaper constraints on the counts
+        queueIndex = 2;
+
+        this.rowCount = rowCount;
+        this.colCount = colCount;
+        this.total = total;
+        this.points = points;
+        this.score = score;
+
+        rowPrefix = new int[n + 1][total + 1];
+        rowSuffix = new int[n + 1][total + 1];
+        colPrefix = new int[n + 1][total + 1];
+        colSuffix = new int[n + 1][total + 1];
+        rowLow = new int[n + 1];
+        rowHigh = new int[n + 1];
+        colLow = new int[n + 1];
+        colHigh = new int[n + 1];
+    }
+
+    @Override
+    public ArrayList<Var> arguments() {
+        ArrayList<Var> variables = new ArrayList<Var>(numberArgs);
+        for (IntVar v : rowCount) {
+            variables.add(v);
+        }
+        for (IntVar v : colCount) {
+            variables.add(v);
+        }
+        variables.add(score);
+        return variables;
+    }
+
+    @Override
+    public void consistency(Store store) {
+        do {
+            store.propagationHasOccurred = false;
+
+            int rowBest = solve(rowCount, rowPrefix, rowSuffix, rowLow, rowHigh);
+            int colBest = solve(colCount, colPrefix, colSuffix, colLow, colHigh);
+            if (rowBest == NONE || colBest == NONE) {
+                throw Store.failException;
+            }
+            score.domain.inMax(store.level, score, rowBest + colBest);
+
+            prune(store, rowCount, rowPrefix, rowSuffix, rowLow, rowHigh, score.min() - colBest);
+            prune(store, colCount, colPrefix, colSuffix, colLow, colHigh, score.min() - rowBest);
+        } while (store.propagationHasOccurred);
+    }
+
+    /**
+     * Fills the tables of the counts from both ends; suffix[k] holds the
+     * sums total - high[k] to total - low[k]
+     *
+     * @return the most points of all counts together, or NONE if they
+     *         cannot sum to total
+     */
+    int solve(IntVar[] count, int[][] prefix, int[][] suffix, int[] low, int[] high) {
+        int restMin = 0;
+        int restMax = 0;
+        for (IntVar c : count) {
+            restMin += c.min();
+            restMax += c.max();
+        }
+        if (restMin > total || restMax < total) {
+            return NONE;
+        }
+        int sumMin = 0;
+        int sumMax = 0;
+        for (int k = 0; k <= n; k++) {
+            low[k] = Math.max(sumMin, total - restMax);
+            high[k] = Math.min(sumMax, total - restMin);
+            if (k < n) {
+                sumMin += count[k].min();
+                sumMax += count[k].max();
+                restMin -= count[k].min();
+                restMax -= count[k].max();
+            }
+        }
+
+        prefix[0][0] = 0;
+        for (int k = 0; k < n; k++) {
+            step(count[k], prefix[k], low[k], high[k], prefix[k + 1], low[k + 1], high[k + 1]);
+        }
+        suffix[n][0] = 0;
+        for (int k = n - 1; k >= 0; k--) {
+            step(count[k], suffix[k + 1], total - high[k + 1], total - low[k + 1], suffix[k], total - high[k],
+                    total - low[k]);
+        }
+        return prefix[n][total];
+    }
+
+    /**
+     * Adds one count to a table: next[s + v] is the best of previous[s]
+     * plus the points of v over the values v of the count, for the sums
+     * from low to high of both
+     */
+    void step(IntVar count, int[] previous, int previousLow, int previousHigh, int[] next, int nextLow,
+            int nextHigh) {
+        Arrays.fill(next, nextLow, nextHigh + 1, NONE);
+        IntDomain dom = count.domain;
+        for (int v = dom.min(); v <= dom.max(); v++) {
+            if (!dom.contains(v)) {
+                continue;
+            }
+            int p = points[v];
+            int last = Math.min(previousHigh, nextHigh - v);
+            for (int s = Math.max(previousLow, nextLow - v); s <= last; s++) {
+                if (previous[s] != NONE && previous[s] + p > next[s + v]) {
+                    next[s + v] = previous[s] + p;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the values of every count with which the counts score less
+     * than needed
+     */
+    void prune(Store store, IntVar[] count, int[][] prefix, int[][] suffix, int[] low, int[] high, int needed) {
+        for (int k = 0; k < n; k++) {
+            IntVar c = count[k];
+            int[] before = prefix[k];
+            int[] after = suffix[k + 1];
+            for (int v = c.min(); v <= c.max(); v++) {
+                if (!c.domain.contains(v)) {
+                    continue;
+                }
+                int best = NONE;
+                int last = Math.min(high[k], high[k + 1] - v);
+                for (int s = Math.max(low[k], low[k + 1] - v); s <= last; s++) {
+                    if (before[s] != NONE && after[total - v - s] != NONE) {
+                        best = Math.max(best, before[s] + after[total - v - s]);
+                    }
+                }
+                if (best == NONE || best + points[v] < needed) {
+                    c.domain.inComplement(store.level, c, v);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getConsistencyPruningEvent(Var var) {
+        if (consistencyPruningEvents != null) {
+            Integer event = consistencyPruningEvents.get(var);
+            if (event != null) {
+                return event;
+            }
+        }
+        return var == score ? IntDomain.BOUND : IntDomain.ANY;
+    }
+
+    @Override
+    public void impose(Store store) {
+        for (Var v : arguments()) {
+            v.putModelConstraint(this, getConsistencyPruningEvent(v));
+        }
+        store.addChanged(this);
+        store.countConstraint();
+    }
+
+    @Override
+    public void removeConstraint() {
+        for (Var v : arguments()) {
+            v.removeConstraint(this);
+        }
+    }
+
+    @Override
+    public boolean satisfied() {
+        if (!score.singleton()) {
+            return false;
+        }
+        int sum = 0;
+        for (int k = 0; k < n; k++) {
+            if (!rowCount[k].singleton() || !colCount[k].singleton()) {
+                return false;
+            }
+            sum += points[rowCount[k].value()] + points[colCount[k].value()];
+        }
+        return sum >= score.value();
+    }
+
+    @Override
+    public void increaseWeight() {
+        if (increaseWeight) {
+            for (Var v : arguments()) {
+                v.weight++;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return id() + " : ScoreBound(" + Arrays.asList(rowCount) + ", " + Arrays.asList(colCount) + ", " + total
+                + ", " + Arrays.toString(points) + ", " + score + ")";
+    }
+}
@@ -0,0 +1,124 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.jacop.constraints.SumInt;
+import org.jacop.core.IntVar;
+import org.jacop.core.Store;
+import org.jacop.search.DepthFirstSearch;
+import org.jacop.search.IndomainMin;
+import org.jacop.search.Search;
+import org.jacop.search.SelectChoicePoint;
+import org.jacop.search.SimpleSelect;
+import org.jacop.search.SimpleSolutionListener;
+import org.junit.Test;
+
+/**
+ * Compares the counts that GaleRyser accepts with the counts of every 0/1
+ * matrix up to 4 x 4, on random domains of the counts.
+ */
+public class GaleRyserTest {
+
+    @Test
+    public void acceptsRealizableCountsOnly() {
+        Random random = new Random(1);
+        for (int n = 1; n <= 4; n++) {
+            TreeSet<String> realizable = realizable(n);
+            for (int instance = 0; instance < 50; instance++) {
+                int[] low = new int[2 * n];
+                int[] high = new int[2 * n];
+                TreeSet<String> expected = new TreeSet<String>();
+                for (int i = 0; i < 2 * n; i++) {
+                    low[i] = random.nextInt(n + 1);
+                    high[i] = low[i] + random.nextInt(n + 1 - low[i]);
+                }
+                for (String counts : realizable) {
+                    if (within(counts, low, high)) {
+                        expected.add(counts);
+                    }
+                }
+
+                assertEquals("n = " + n + ", low = " + Arrays.toString(low) + ", high = " + Arrays.toString(high),
+                        new ArrayList<String>(expected), solutions(n, low, high));
+            }
+        }
+    }
+
+    /**
+     * Returns the row and column counts of every n x n 0/1 matrix
+     */
+    static TreeSet<String> realizable(int n) {
+        TreeSet<String> result = new TreeSet<String>();
+        for (int matrix = 0; matrix < 1 << n * n; matrix++) {
+            int[] counts = new int[2 * n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    if ((matrix >> (i * n + j) & 1) != 0) {
+                        counts[i]++;
+                        counts[n + j]++;
+                    }
+                }
+            }
+            result.add(Arrays.toString(counts));
+        }
+        return result;
+    }
+
+    static boolean within(String counts, int[] low, int[] high) {
+        String[] values = counts.substring(1, counts.length() - 1).split(", ");
+        for (int i = 0; i < values.length; i++) {
+            int value = Integer.parseInt(values[i]);
+            if (value < low[i] || value > high[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns every count assignment within the domains that GaleRyser and
+     * equal sums accept
+     */
+    static List<String> solutions(int n, int[] low, int[] high) {
+        Store store = new Store();
+        IntVar[] counts = new IntVar[2 * n];
+        for (int i = 0; i < 2 * n; i++) {
+            counts[i] = new IntVar(store, low[i], high[i]);
+        }
+        IntVar[] rowCount = Arrays.copyOfRange(counts, 0, n);
+        IntVar[] colCount = Arrays.copyOfRange(counts, n, 2 * n);
+        IntVar total = new IntVar(store, 0, n * n);
+        store.impose(new SumInt(store, rowCount, "==", total));
+        store.impose(new SumInt(store, colCount, "==", total));
+        store.impose(new GaleRyser(rowCount, colCount));
+
+        List<String> found = new ArrayList<String>();
+        DepthFirstSearch<IntVar> search = new DepthFirstSearch<IntVar>();
+        search.setPrintInfo(false);
+        search.setSolutionListener(new SimpleSolutionListener<IntVar>() {
+
+            @Override
+            public boolean executeAfterSolution(Search<IntVar> s, SelectChoicePoint<IntVar> select) {
+                boolean result = super.executeAfterSolution(s, select);
+                int[] values = new int[counts.length];
+                for (int i = 0; i < counts.length; i++) {
+                    values[i] = counts[i].value();
+                }
+                found.add(Arrays.toString(values));
+                return result;
+            }
+        });
+        search.getSolutionListener().searchAll(true);
+        search.getSolutionListener().recordSolutions(false);
+        if (store.consistency()) {
+            search.labeling(store, new SimpleSelect<IntVar>(counts, null, new IndomainMin<IntVar>()));
+        }
+
+        found.sort(null);
+        return found;
+    }
+}
@@ -0,0 +1,97 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.jacop.constraints.XgteqC;
+import org.jacop.core.IntVar;
+import org.jacop.search.DepthFirstSearch;
+import org.jacop.search.IndomainMin;
+import org.jacop.search.Search;
+import org.jacop.search.SelectChoicePoint;
+import org.jacop.search.SimpleMatrixSelect;
+import org.jacop.search.SimpleSolutionListener;
+import org.junit.Test;
+
+/**
+ * Compares the GridScore model with the decomposed SumInt and Element
+ * model on small random instances: both must have the same grids with the
+ * same scores.
+ */
+public class GridScoreTest {
+
+    @Test
+    public void sameSolutionsAsDecomposed() {
+        Random random = new Random(1);
+        for (int instance = 0; instance < 100; instance++) {
+            Main model = randomInstance(random);
+            int least = randomLeast(random, model);
+
+            assertEquals(describe(model) + ", score >= " + least, solutions(model, true, false, least),
+                    solutions(model, false, false, least));
+        }
+    }
+
+    /**
+     * Returns a grid of 2 to 4 rows with random residentials and points
+     */
+    static Main randomInstance(Random random) {
+        int n = 2 + random.nextInt(3);
+        int[] points = new int[n + 1];
+        for (int k = 0; k <= n; k++) {
+            points[k] = random.nextInt(2 * n + 1) - n;
+        }
+        return new Main(n, random.nextInt(n * n + 1), points);
+    }
+
+    /**
+     * Returns a lower bound on the score between the least and the most
+     * points the rows and columns can have
+     */
+    static int randomLeast(Random random, Main model) {
+        int min = Arrays.stream(model.point_distribution).min().getAsInt();
+        int max = Arrays.stream(model.point_distribution).max().getAsInt();
+        return 2 * model.n * min + random.nextInt(2 * model.n * (max - min) + 1);
+    }
+
+    static String describe(Main model) {
+        return "n = " + model.n + ", residentials = " + model.n_residential + ", points = "
+                + Arrays.toString(model.point_distribution);
+    }
+
+    /**
+     * Returns every grid with a score of at least least, and its score
+     */
+    static List<String> solutions(Main model, boolean decomposed, boolean scoreBound, int least) {
+        model.decomposed = decomposed;
+        model.scoreBound = scoreBound;
+        model.buildModel();
+        model.store.impose(new XgteqC(model.globalScore, least));
+
+        List<String> found = new ArrayList<String>();
+        DepthFirstSearch<IntVar> search = new DepthFirstSearch<IntVar>();
+        search.setPrintInfo(false);
+        search.setSolutionListener(new SimpleSolutionListener<IntVar>() {
+
+            @Override
+            public boolean executeAfterSolution(Search<IntVar> s, SelectChoicePoint<IntVar> select) {
+                boolean result = super.executeAfterSolution(s, select);
+                StringBuilder solution = new StringBuilder();
+                for (IntVar v : Main.flatten(model.grid)) {
+                    solution.append(v.value()).append(' ');
+                }
+                found.add(solution.append(model.globalScore.min()).append("..").append(model.globalScore.max())
+                        .toString());
+                return result;
+            }
+        });
+        search.getSolutionListener().searchAll(true);
+        search.getSolutionListener().recordSolutions(false);
+        search.labeling(model.store, new SimpleMatrixSelect<IntVar>(model.grid, null, new IndomainMin<IntVar>()));
+
+        found.sort(null);
+        return found;
+    }
+}
@@ -0,0 +1,28 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares the model with ScoreBound to the model without it on small
+ * random instances, with the instances and the enumeration of
+ * GridScoreTest: the bound must not remove any grid that reaches the
+ * least score.
+ */
+public class ScoreBoundTest {
+
+    @Test
+    public void sameSolutionsWithoutBound() {
+        Random random = new Random(2);
+        for (int instance = 0; instance < 100; instance++) {
+            Main model = GridScoreTest.randomInstance(random);
+            int least = GridScoreTest.randomLeast(random, model);
+            boolean decomposed = random.nextBoolean();
+
+            assertEquals(GridScoreTest.describe(model) + ", score >= " + least + ", decomposed " + decomposed,
+                    GridScoreTest.solutions(model, decomposed, false, least),
+                    GridScoreTest.solutions(model, decomposed, true, least));
+        }
+    }
+}